@@ -0,0 +1,92 @@
+package com.virtha;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Tabla de alias de Walker/Vose para muestrear una distribución discreta con pesos.
+ * La construcción es O(n) y cada muestra es O(1) independientemente del número de entradas.
+ */
+public final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Construye la tabla a partir de los pesos de cada entrada
+     * @param weights Pesos positivos de cada entrada
+     */
+    public AliasTable(double[] weights) {
+        int size = weights.length;
+        if (size == 0) {
+            throw new IllegalArgumentException("La tabla de alias necesita al menos una entrada");
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight > 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Peso inválido: " + weight);
+            }
+            total += weight;
+        }
+
+        probability = new double[size];
+        alias = new int[size];
+
+        // Escalar los pesos para que la media sea 1 y repartirlos en pequeños y grandes
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Emparejar cada entrada pequeña con una grande que rellena el resto de su columna
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Las entradas restantes ocupan su columna completa (errores de redondeo incluidos)
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+    }
+
+    /**
+     * Obtiene una entrada aleatoria según los pesos
+     * @param random Generador de números aleatorios
+     * @return Índice de la entrada elegida
+     */
+    public int sample(RandomGenerator random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * Obtiene el número de entradas de la tabla
+     * @return Número de entradas
+     */
+    public int size() {
+        return probability.length;
+    }
+}
@@ -0,0 +1,62 @@
+package com.virtha;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utilidades para escribir archivos de forma segura ante caídas del servidor.
+ * El contenido se escribe en un archivo temporal del mismo directorio, se fuerza a disco
+ * y se renombra sobre el destino, así que el archivo nunca queda a medio escribir.
+ */
+public final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Reemplaza el contenido de un archivo de forma atómica
+     * @param target Archivo destino
+     * @param data Contenido completo del archivo
+     * @throws IOException Si no se pudo escribir o renombrar el archivo
+     */
+    public static void write(File target, byte[] data) throws IOException {
+        write(target, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reemplaza el contenido de un archivo de forma atómica
+     * @param target Archivo destino
+     * @param data Contenido completo del archivo, desde su posición hasta su límite
+     * @throws IOException Si no se pudo escribir o renombrar el archivo
+     */
+    public static void write(File target, ByteBuffer data) throws IOException {
+        Path targetPath = target.toPath();
+        Path directory = targetPath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp = Files.createTempFile(directory, target.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
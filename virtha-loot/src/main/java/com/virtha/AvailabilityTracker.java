@@ -0,0 +1,283 @@
+package com.virtha;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Sigue los cofres en cooldown de cada clave del almacén para servir el número de cofres
+ * disponibles y el próximo que vuelve a estar disponible sin recorrer el almacén ni los cofres
+ * configurados: el coste depende solo de los cofres en cooldown de las claves del jugador, ya que
+ * cada uno se filtra según la configuración vigente. Escucha los cambios del almacén
+ * (reclamaciones, expiraciones, cargas y sincronización del clúster) y mantiene por clave la
+ * expiración de cada cofre y un montículo con las expiraciones; las que ya han pasado se
+ * descartan al consultar.
+ *
+ * Los cofres con cooldown global o de grupo se guardan con una clave compartida, así que para un
+ * jugador se suman las de como mucho cuatro claves: la suya, la global y las de sus grupos de
+ * equipo y de permisos, que salen de la caché de grupos. De cada clave solo cuentan los cofres que
+ * siguen en la configuración y cuyo alcance la usa para ese jugador.
+ */
+public final class AvailabilityTracker implements CooldownStore.ChangeListener {
+
+    private final VirthaLootPlugin plugin;
+    private final CooldownStore store;
+    private final Map<UUID, KeyCooldowns> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor del seguimiento de disponibilidad
+     * @param plugin Instancia del plugin principal
+     * @param store Almacén de cooldowns que se sigue
+     */
+    public AvailabilityTracker(VirthaLootPlugin plugin, CooldownStore store) {
+        this.plugin = plugin;
+        this.store = store;
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Las eliminaciones llegan por onRemoved, con la expiración eliminada
+        if (expiry <= 0) {
+            return;
+        }
+        // compute es atómico por clave, así que una clave vacía no se retira mientras otro hilo la usa
+        keys.compute(new UUID(playerMost, playerLeast), (k, cooldowns) -> {
+            KeyCooldowns result = cooldowns != null ? cooldowns : new KeyCooldowns();
+            result.set(chestId, expiry);
+            return result;
+        });
+    }
+
+    @Override
+    public void onRemoved(int chestId, long playerMost, long playerLeast, long removedExpiry) {
+        // Una expiración asíncrona que llega tarde no borra la reclamación posterior del hilo principal
+        keys.computeIfPresent(new UUID(playerMost, playerLeast),
+                (k, cooldowns) -> cooldowns.remove(chestId, removedExpiry) ? null : cooldowns);
+    }
+
+    @Override
+    public void onChestCleared(int chestId) {
+        for (UUID key : keys.keySet()) {
+            keys.computeIfPresent(key, (k, cooldowns) -> cooldowns.remove(chestId, Long.MAX_VALUE) ? null : cooldowns);
+        }
+    }
+
+    /**
+     * Obtiene el número de cofres que el jugador puede abrir ahora
+     * @param player Jugador
+     * @param snapshot Instantánea de configuración con los cofres existentes
+     * @return Número de cofres disponibles
+     */
+    public int getAvailableCount(Player player, LootSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        PlayerKeys playerKeys = new PlayerKeys(player.getUniqueId(), snapshot);
+        int onCooldown = 0;
+        for (UUID key : playerKeys.keys) {
+            KeyCooldowns cooldowns = keys.get(key);
+            if (cooldowns != null) {
+                onCooldown += cooldowns.count(now, chestId -> playerKeys.uses(key, chestId));
+            }
+        }
+        return Math.max(0, snapshot.getLootTables().size() - onCooldown);
+    }
+
+    /**
+     * Obtiene el cofre en cooldown del jugador que antes vuelve a estar disponible
+     * @param player Jugador
+     * @param snapshot Instantánea de configuración con los cofres existentes
+     * @return Próxima expiración, o null si no tiene ningún cofre en cooldown
+     */
+    public NextExpiry getNextAvailable(Player player, LootSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        PlayerKeys playerKeys = new PlayerKeys(player.getUniqueId(), snapshot);
+        long[] next = null;
+        for (UUID key : playerKeys.keys) {
+            KeyCooldowns cooldowns = keys.get(key);
+            if (cooldowns == null) {
+                continue;
+            }
+            long[] first = cooldowns.first(now, chestId -> playerKeys.uses(key, chestId));
+            if (first != null && (next == null || first[0] < next[0])) {
+                next = first;
+            }
+        }
+        return next != null ? new NextExpiry(store.getChestName((int) next[1]), next[0]) : null;
+    }
+
+    /**
+     * Obtiene el número de claves con algún cofre en cooldown
+     * @return Claves seguidas
+     */
+    public int getTrackedKeys() {
+        return keys.size();
+    }
+
+    /**
+     * Claves del almacén que puede usar un jugador y comprobación de qué cofres las usan
+     */
+    private final class PlayerKeys {
+
+        private final UUID playerId;
+        private final UUID teamKey;
+        private final UUID permissionKey;
+        private final LootSnapshot snapshot;
+        private final List<UUID> keys = new ArrayList<>(4);
+
+        private PlayerKeys(UUID playerId, LootSnapshot snapshot) {
+            this.playerId = playerId;
+            this.snapshot = snapshot;
+            PlayerGroupCache groupCache = plugin.getGroupCache();
+            this.teamKey = groupCache.getGroupKey(playerId, false);
+            this.permissionKey = groupCache.getGroupKey(playerId, true);
+            keys.add(playerId);
+            keys.add(CooldownScope.GLOBAL_KEY);
+            if (teamKey != null) {
+                keys.add(teamKey);
+            }
+            if (permissionKey != null) {
+                keys.add(permissionKey);
+            }
+        }
+
+        /**
+         * Comprueba si el cofre sigue en la configuración y guarda el cooldown de este jugador en la clave
+         */
+        private boolean uses(UUID key, int chestId) {
+            LootTable lootTable = snapshot.getLootTables().get(store.getChestName(chestId));
+            return lootTable != null && key.equals(keyOf(lootTable));
+        }
+
+        private UUID keyOf(LootTable lootTable) {
+            switch (lootTable.getCooldownScope()) {
+                case GLOBAL:
+                    return CooldownScope.GLOBAL_KEY;
+                case GROUP:
+                    UUID groupKey = lootTable.isPermissionGroup() ? permissionKey : teamKey;
+                    return groupKey != null ? groupKey : playerId;
+                default:
+                    return playerId;
+            }
+        }
+    }
+
+    /**
+     * Cofres en cooldown de una clave del almacén
+     */
+    private static final class KeyCooldowns {
+
+        // Id del cofre -> expiración vigente
+        private final Map<Integer, Long> expiries = new HashMap<>();
+        // Expiraciones ordenadas {expiración, id del cofre}; las sustituidas se descartan al llegar a la cima
+        private final PriorityQueue<long[]> heap = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+        private synchronized void set(int chestId, long expiry) {
+            expiries.put(chestId, expiry);
+            heap.add(new long[]{expiry, chestId});
+            // Reclamar varias veces antes de expirar deja entradas sustituidas en el montículo
+            if (heap.size() > 2 * expiries.size() + 8) {
+                heap.clear();
+                for (Map.Entry<Integer, Long> entry : expiries.entrySet()) {
+                    heap.add(new long[]{entry.getValue(), entry.getKey()});
+                }
+            }
+        }
+
+        /**
+         * Elimina un cofre si su expiración no es posterior a la eliminada del almacén
+         * @return true si ya no queda ningún cofre en esta clave
+         */
+        private synchronized boolean remove(int chestId, long removedExpiry) {
+            Long current = expiries.get(chestId);
+            if (current != null && current <= removedExpiry) {
+                expiries.remove(chestId);
+            }
+            if (expiries.isEmpty()) {
+                heap.clear();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized int count(long now, IntPredicate accepted) {
+            purge(now);
+            int count = 0;
+            for (int chestId : expiries.keySet()) {
+                if (accepted.test(chestId)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private synchronized long[] first(long now, IntPredicate accepted) {
+            purge(now);
+            long[] top = heap.peek();
+            if (top == null || accepted.test((int) top[1])) {
+                return top != null ? top.clone() : null;
+            }
+            // La cima es un cofre que ya no cuenta: se busca entre el resto
+            long[] first = null;
+            for (Map.Entry<Integer, Long> entry : expiries.entrySet()) {
+                if (accepted.test(entry.getKey()) && (first == null || entry.getValue() < first[0])) {
+                    first = new long[]{entry.getValue(), entry.getKey()};
+                }
+            }
+            return first;
+        }
+
+        /**
+         * Descarta las expiraciones pasadas y las entradas sustituidas de la cima del montículo
+         */
+        private void purge(long now) {
+            long[] top;
+            while ((top = heap.peek()) != null) {
+                Long current = expiries.get((int) top[1]);
+                if (current == null || current != top[0]) {
+                    heap.poll();
+                } else if (top[0] <= now) {
+                    heap.poll();
+                    expiries.remove((int) top[1]);
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Próximo cofre que vuelve a estar disponible para un jugador
+     */
+    public static final class NextExpiry {
+
+        private final String chestName;
+        private final long expiry;
+
+        private NextExpiry(String chestName, long expiry) {
+            this.chestName = chestName;
+            this.expiry = expiry;
+        }
+
+        /**
+         * Obtiene el nombre del cofre
+         * @return Nombre del cofre
+         */
+        public String getChestName() {
+            return chestName;
+        }
+
+        /**
+         * Obtiene el momento en que vuelve a estar disponible
+         * @return Expiración en milisegundos
+         */
+        public long getExpiry() {
+            return expiry;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.virtha;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Almacenamiento de las definiciones de los contenedores con un archivo por cofre.
+ * Cada cofre se guarda en chests/&lt;nombre&gt;.yml y lootchests.yml solo conserva el bloque
+ * settings. Al cargar, los archivos se leen en paralelo y se combinan en una única configuración
+ * en memoria con la misma estructura que el antiguo lootchests.yml (chests.&lt;nombre&gt;...), así
+ * que el resto del plugin no cambia. Al guardar un cofre solo se escribe su archivo, y un archivo
+ * dañado solo deja sin cargar ese cofre.
+ *
+ * Los cofres que aparezcan en la sección chests de lootchests.yml (versiones anteriores o añadidos
+ * a mano) se mueven a su propio archivo al cargar; el archivo original se copia antes en
+ * lootchests.yml.migrated. Los cofres cuyo nombre no sirve como nombre de archivo se mantienen en
+ * lootchests.yml.
+ */
+public class ChestFileStorage {
+
+    private static final Pattern VALID_NAME = Pattern.compile("[\\p{L}\\p{N}_-]+");
+    private static final String SUFFIX = ".yml";
+
+    private final File globalFile;
+    private final File directory;
+    private final SaveCoordinator saves;
+    private final Logger logger;
+
+    /**
+     * Constructor del almacenamiento de definiciones
+     * @param globalFile Archivo lootchests.yml
+     * @param directory Directorio con un archivo por cofre
+     * @param saves Coordinador de guardados asíncronos
+     * @param logger Logger donde se informan los errores de lectura
+     */
+    public ChestFileStorage(File globalFile, File directory, SaveCoordinator saves, Logger logger) {
+        this.globalFile = globalFile;
+        this.directory = directory;
+        this.saves = saves;
+        this.logger = logger;
+    }
+
+    /**
+     * Comprueba si un nombre de cofre se puede usar como nombre de archivo
+     * @param chestName Nombre del cofre
+     * @return true si solo contiene letras, números, guiones y guiones bajos
+     */
+    public static boolean isValidName(String chestName) {
+        return VALID_NAME.matcher(chestName).matches();
+    }
+
+    /**
+     * Carga lootchests.yml y los archivos de los cofres, moviendo antes a su propio archivo los
+     * cofres que sigan en lootchests.yml. No usa el hilo principal, así que se puede llamar
+     * desde un hilo asíncrono.
+     * @param errors Lista donde se añaden los archivos que no se pudieron leer
+     * @return Configuración combinada con el bloque settings y todos los cofres bajo chests
+     */
+    public FileConfiguration load(List<String> errors) {
+        YamlConfiguration globalConfig = new YamlConfiguration();
+        try {
+            globalConfig.load(globalFile);
+            migrateLegacyChests(globalConfig);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "No se pudo leer " + globalFile.getName(), e);
+            errors.add(globalFile.getName() + ": " + e.getMessage());
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        // Los archivos de los cofres son independientes, así que se leen en paralelo
+        List<Shard> shards = Arrays.stream(files).parallel()
+                .map(file -> readShard(file, errors))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        YamlConfiguration merged = new YamlConfiguration();
+        ConfigTrees.copyInto(merged, ConfigTrees.toMap(globalConfig));
+        for (Shard shard : shards) {
+            merged.createSection("chests." + shard.chestName, ConfigTrees.toMap(shard.config));
+        }
+        logger.info("Cargados " + shards.size() + " cofres desde " + directory.getName() + "/");
+        return merged;
+    }
+
+    private Shard readShard(File file, List<String> errors) {
+        String chestName = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+        if (!isValidName(chestName)) {
+            logger.warning("Se ignora " + directory.getName() + "/" + file.getName() + ": el nombre del cofre no es válido");
+            return null;
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(file);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "No se pudo leer " + directory.getName() + "/" + file.getName()
+                    + ", el cofre '" + chestName + "' no se cargará", e);
+            synchronized (errors) {
+                errors.add(directory.getName() + "/" + file.getName() + ": " + e.getMessage());
+            }
+            return null;
+        }
+        return new Shard(chestName, config);
+    }
+
+    /**
+     * Lee la definición de un único cofre desde su archivo
+     * @param chestName Nombre del cofre
+     * @return Copia de la definición, o null si el archivo no existe
+     * @throws IOException Si no se pudo leer el archivo
+     * @throws InvalidConfigurationException Si el archivo no es un YAML válido
+     */
+    public Map<String, Object> readChest(String chestName) throws IOException, InvalidConfigurationException {
+        File file = getChestFile(chestName);
+        if (!file.isFile()) {
+            return null;
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(file);
+        return ConfigTrees.toMap(config);
+    }
+
+    private void migrateLegacyChests(FileConfiguration globalConfig) {
+        ConfigurationSection chests = globalConfig.getConfigurationSection("chests");
+        if (chests == null) {
+            return;
+        }
+
+        List<String> moved = new ArrayList<>();
+        for (String chestName : chests.getKeys(false)) {
+            ConfigurationSection section = chests.getConfigurationSection(chestName);
+            if (section == null) {
+                continue;
+            }
+            if (!isValidName(chestName)) {
+                logger.warning("El nombre del cofre '" + chestName + "' no es válido como nombre de archivo, se mantiene en lootchests.yml");
+                continue;
+            }
+
+            YamlConfiguration shard = new YamlConfiguration();
+            ConfigTrees.copyInto(shard, ConfigTrees.toMap(section));
+            // El comentario que precedía al cofre pasa a ser la cabecera de su archivo
+            shard.options().setHeader(globalConfig.getComments("chests." + chestName));
+            try {
+                AtomicFiles.write(getChestFile(chestName), shard.saveToString().getBytes(StandardCharsets.UTF_8));
+                moved.add(chestName);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "No se pudo mover el cofre '" + chestName + "' a su propio archivo", e);
+            }
+        }
+        if (moved.isEmpty()) {
+            return;
+        }
+
+        try {
+            File backup = new File(globalFile.getParentFile(), globalFile.getName() + ".migrated");
+            Files.copy(globalFile.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            for (String chestName : moved) {
+                globalConfig.set("chests." + chestName, null);
+            }
+            if (chests.getKeys(false).isEmpty()) {
+                globalConfig.set("chests", null);
+            }
+            AtomicFiles.write(globalFile, globalConfig.saveToString().getBytes(StandardCharsets.UTF_8));
+            logger.info("Se movieron " + moved.size() + " cofres de lootchests.yml a " + directory.getName() + "/");
+        } catch (IOException e) {
+            // Los archivos de los cofres ya existen y tienen prioridad, así que solo queda el duplicado
+            logger.log(Level.SEVERE, "No se pudo actualizar lootchests.yml tras mover los cofres", e);
+        }
+    }
+
+    /**
+     * Pide guardar la definición de un cofre. Si el cofre ya no existe en la configuración
+     * combinada, se borra su archivo. Debe llamarse desde el hilo principal.
+     * @param merged Configuración combinada devuelta por load
+     * @param chestName Nombre del cofre
+     * @param requester Jugador al que se avisará si el guardado falla, o null si no hay ninguno
+     */
+    public void saveChest(FileConfiguration merged, String chestName, Player requester) {
+        ConfigurationSection section = merged.getConfigurationSection("chests." + chestName);
+        if (!isValidName(chestName)) {
+            // Cofre de una versión anterior que no se pudo mover: se reescribe lootchests.yml
+            // con los ajustes y los demás cofres que siguen en él
+            saves.requestSave(globalFile, buildGlobalConfig(merged), requester);
+        } else if (section != null) {
+            saves.requestSave(getChestFile(chestName), section, requester);
+        } else {
+            saves.requestDelete(getChestFile(chestName), requester);
+        }
+    }
+
+    private static YamlConfiguration buildGlobalConfig(FileConfiguration merged) {
+        YamlConfiguration globalConfig = new YamlConfiguration();
+        for (String key : merged.getKeys(false)) {
+            if (!key.equals("chests")) {
+                ConfigTrees.copyInto(globalConfig, Collections.singletonMap(key, ConfigTrees.copy(merged.get(key))));
+            }
+        }
+
+        ConfigurationSection chests = merged.getConfigurationSection("chests");
+        if (chests != null) {
+            for (String chestName : chests.getKeys(false)) {
+                ConfigurationSection section = chests.getConfigurationSection(chestName);
+                if (section != null && !isValidName(chestName)) {
+                    globalConfig.createSection("chests." + chestName, ConfigTrees.toMap(section));
+                }
+            }
+        }
+        return globalConfig;
+    }
+
+    /**
+     * Obtiene el archivo de un cofre
+     * @param chestName Nombre del cofre
+     * @return Archivo chests/&lt;nombre&gt;.yml
+     */
+    public File getChestFile(String chestName) {
+        return new File(directory, chestName + SUFFIX);
+    }
+
+    /**
+     * Definición leída del archivo de un cofre
+     */
+    private static final class Shard {
+
+        private final String chestName;
+        private final YamlConfiguration config;
+
+        private Shard(String chestName, YamlConfiguration config) {
+            this.chestName = chestName;
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Vigila los archivos de configuración del plugin y aplica los cambios hechos desde fuera del
+ * servidor (editores, git-sync...). Los eventos se agrupan hasta que pasa un intervalo sin
+ * cambios; entonces se leen en este hilo solo los archivos de cofre modificados y en el hilo
+ * principal se recompilan los cofres cuya definición ha cambiado. El coste depende de los
+ * cofres modificados y no del total. Un cambio en config.yml o lootchests.yml puede afectar a
+ * todos los cofres, así que provoca una recarga completa.
+ *
+ * Los guardados del propio plugin también generan eventos, pero su contenido coincide con el
+ * de memoria y no se recompila nada.
+ */
+public class ChestFileWatcher {
+
+    private static final String SUFFIX = ".yml";
+
+    private final VirthaLootPlugin plugin;
+    private final ChestFileStorage storage;
+    private final SaveCoordinator saves;
+    private final Path dataFolder;
+    private final Path chestsFolder;
+    private final long debounceMillis;
+
+    private WatchService watchService;
+    private volatile boolean running;
+
+    /**
+     * Constructor del vigilante de archivos
+     * @param plugin Instancia del plugin principal
+     * @param storage Almacenamiento de las definiciones de los contenedores
+     * @param saves Coordinador de guardados, para no pisar cambios del editor aún sin escribir
+     * @param chestsFolder Directorio con un archivo por cofre
+     * @param debounceMillis Milisegundos sin cambios que se esperan antes de aplicarlos
+     */
+    public ChestFileWatcher(VirthaLootPlugin plugin, ChestFileStorage storage, SaveCoordinator saves,
+                            File chestsFolder, long debounceMillis) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.saves = saves;
+        this.dataFolder = plugin.getDataFolder().toPath();
+        this.chestsFolder = chestsFolder.toPath();
+        this.debounceMillis = Math.max(50L, debounceMillis);
+    }
+
+    /**
+     * Registra los directorios y arranca el hilo del vigilante
+     * @return true si se pudo empezar a vigilar
+     */
+    public boolean start() {
+        try {
+            Files.createDirectories(chestsFolder);
+            watchService = FileSystems.getDefault().newWatchService();
+            dataFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            chestsFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "No se pudo vigilar la carpeta del plugin, los cambios externos no se aplicarán", e);
+            return false;
+        }
+
+        running = true;
+        Thread thread = new Thread(this::watchLoop, "VirthaLoot-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Detiene el vigilante
+     */
+    public void shutdown() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // Ya estaba cerrado
+            }
+        }
+    }
+
+    private void watchLoop() {
+        Set<String> changedChests = new HashSet<>();
+        boolean globalChanged = false;
+
+        while (running) {
+            WatchKey key;
+            try {
+                // Sin cambios pendientes se espera indefinidamente; con cambios, hasta que haya silencio
+                boolean idle = changedChests.isEmpty() && !globalChanged;
+                key = idle ? watchService.take() : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key == null) {
+                apply(changedChests, globalChanged);
+                changedChests = new HashSet<>();
+                globalChanged = false;
+                continue;
+            }
+
+            boolean inChestsFolder = chestsFolder.equals(key.watchable());
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Se han perdido eventos: no se sabe qué cambió
+                    globalChanged = true;
+                    continue;
+                }
+
+                String fileName = event.context().toString();
+                if (inChestsFolder) {
+                    if (fileName.endsWith(SUFFIX)) {
+                        changedChests.add(fileName.substring(0, fileName.length() - SUFFIX.length()));
+                    }
+                } else if (fileName.equals("config.yml") || fileName.equals("lootchests.yml")) {
+                    globalChanged = true;
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void apply(Set<String> changedChests, boolean globalChanged) {
+        if (!running) {
+            return;
+        }
+        if (globalChanged) {
+            plugin.getLogger().info("Se han modificado los archivos de configuración, recargando...");
+            Bukkit.getScheduler().runTask(plugin, () -> plugin.reloadLoot(Bukkit.getConsoleSender()));
+            return;
+        }
+
+        // Leer fuera del hilo principal solo los archivos modificados
+        Map<String, Map<String, Object>> definitions = new HashMap<>();
+        for (String chestName : changedChests) {
+            if (!ChestFileStorage.isValidName(chestName)) {
+                continue;
+            }
+            try {
+                definitions.put(chestName, storage.readChest(chestName));
+            } catch (IOException | InvalidConfigurationException e) {
+                // Puede ser una escritura a medias; el siguiente evento lo volverá a intentar
+                plugin.getLogger().warning("No se pudo leer el archivo del cofre '" + chestName + "', se mantiene la versión anterior: " + e.getMessage());
+            }
+        }
+        if (definitions.isEmpty()) {
+            return;
+        }
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            LootSnapshot snapshot = plugin.getSnapshot();
+            List<String> updated = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> entry : definitions.entrySet()) {
+                String chestName = entry.getKey();
+                if (saves.isPending(storage.getChestFile(chestName))) {
+                    // El editor tiene cambios sin escribir en este cofre y se guardarán encima
+                    plugin.getLogger().warning("Se ignora el cambio externo del cofre '" + chestName + "': tiene cambios del editor pendientes de guardar");
+                    continue;
+                }
+                LootSnapshot updatedSnapshot = snapshot.updateChest(chestName, entry.getValue(), plugin.getLogger());
+                if (updatedSnapshot != snapshot) {
+                    snapshot = updatedSnapshot;
+                    updated.add(chestName);
+                }
+            }
+            if (!updated.isEmpty()) {
+                plugin.publishSnapshot(snapshot);
+                plugin.getLogger().info("Recompilados " + updated.size() + " cofres modificados: " + String.join(", ", updated));
+            }
+        });
+    }
+}
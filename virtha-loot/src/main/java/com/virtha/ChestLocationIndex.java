@@ -0,0 +1,338 @@
+package com.virtha;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Índice en memoria de las ubicaciones de los contenedores de loot.
+ * Los contenedores se agrupan por mundo y se indexan por la coordenada del bloque
+ * empaquetada en un long, en una tabla de direccionamiento abierto con claves primitivas,
+ * así que buscar el contenedor de un bloque no construye cadenas, no crea objetos ni recorre
+ * la configuración. Si varios contenedores comparten ubicación se encadenan en el orden de la
+ * configuración y se devuelve el primero cuyo tipo de bloque coincide.
+ */
+public class ChestLocationIndex {
+
+    private final Logger logger;
+    // Mundo -> (coordenada empaquetada -> contenedores en esa ubicación)
+    private final Map<String, PositionTable> chestsByWorld = new HashMap<>();
+    // Nombre -> contenedor, en el orden de la configuración
+    private final Map<String, IndexedChest> chestsByName = new LinkedHashMap<>();
+
+    /**
+     * Constructor del índice
+     * @param logger Logger donde se informan las ubicaciones inválidas
+     */
+    public ChestLocationIndex(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Empaqueta una coordenada de bloque en un long (26 bits para X y Z, 12 bits para Y)
+     * @param x Coordenada X del bloque
+     * @param y Coordenada Y del bloque
+     * @param z Coordenada Z del bloque
+     * @return Coordenada empaquetada
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Reconstruye el índice completo a partir de la sección "chests" de lootchests.yml
+     * @param chestsSection Sección con los contenedores, puede ser null
+     */
+    public void rebuild(ConfigurationSection chestsSection) {
+        chestsByWorld.clear();
+        chestsByName.clear();
+
+        if (chestsSection == null) {
+            return;
+        }
+
+        for (String chestName : chestsSection.getKeys(false)) {
+            put(chestName, chestsSection.getString(chestName + ".location"), chestsSection.getString(chestName + ".blockType"));
+        }
+    }
+
+    /**
+     * Añade o actualiza un contenedor en el índice
+     * @param chestName Nombre del contenedor
+     * @param location Ubicación en formato "mundo,x,y,z"
+     * @param blockType Tipo de bloque esperado, o null si no se comprueba
+     * @return true si el contenedor se indexó correctamente
+     */
+    public boolean put(String chestName, String location, String blockType) {
+        remove(chestName);
+
+        if (location == null) {
+            return false;
+        }
+
+        String[] parts = location.split(",");
+        if (parts.length != 4) {
+            logger.warning("Ubicación inválida para el contenedor " + chestName + ": " + location);
+            return false;
+        }
+
+        long key;
+        try {
+            key = pack(Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+        } catch (NumberFormatException e) {
+            logger.warning("Ubicación inválida para el contenedor " + chestName + ": " + location);
+            return false;
+        }
+
+        Material material = null;
+        if (blockType != null) {
+            material = Material.matchMaterial(blockType);
+            if (material == null) {
+                // Un tipo desconocido nunca coincide con ningún bloque, igual que antes
+                logger.warning("Tipo de bloque inválido para el contenedor " + chestName + ": " + blockType
+                        + ", no se podrá abrir");
+            }
+        }
+
+        IndexedChest chest = new IndexedChest(chestName, parts[0], key, material, blockType == null);
+        IndexedChest head = link(chest);
+        if (head != null) {
+            logger.warning("El contenedor " + chestName + " comparte ubicación con " + head.name
+                    + "; se abrirá el primero cuyo tipo de bloque coincida.");
+        }
+        return true;
+    }
+
+    /**
+     * Añade un contenedor ya resuelto a las tablas del índice
+     * @return Primer contenedor de la ubicación si ya había otro en ella, o null
+     */
+    private IndexedChest link(IndexedChest chest) {
+        chestsByName.put(chest.name, chest);
+
+        PositionTable worldChests = chestsByWorld.computeIfAbsent(chest.world, k -> new PositionTable());
+        IndexedChest head = worldChests.get(chest.key);
+        if (head == null) {
+            worldChests.put(chest.key, chest);
+            return null;
+        }
+        // Se añade al final de la cadena, conservando el orden de la configuración
+        IndexedChest tail = head;
+        while (tail.next != null) {
+            tail = tail.next;
+        }
+        tail.next = chest;
+        return head;
+    }
+
+    /**
+     * Crea una copia independiente del índice, para modificarla sin alterar el índice de una
+     * instantánea ya publicada
+     * @return Copia del índice con los mismos contenedores, en el mismo orden
+     */
+    public ChestLocationIndex copy() {
+        ChestLocationIndex copy = new ChestLocationIndex(logger);
+        for (IndexedChest chest : chestsByName.values()) {
+            copy.link(new IndexedChest(chest.name, chest.world, chest.key, chest.blockType, chest.anyBlock));
+        }
+        return copy;
+    }
+
+    /**
+     * Elimina un contenedor del índice
+     * @param chestName Nombre del contenedor
+     */
+    public void remove(String chestName) {
+        IndexedChest chest = chestsByName.remove(chestName);
+        if (chest == null) {
+            return;
+        }
+
+        PositionTable worldChests = chestsByWorld.get(chest.world);
+        if (worldChests == null) {
+            return;
+        }
+        IndexedChest head = worldChests.get(chest.key);
+        if (head == chest) {
+            // Si otro contenedor compartía la ubicación, pasa a ocupar su lugar
+            if (chest.next != null) {
+                worldChests.put(chest.key, chest.next);
+            } else {
+                worldChests.remove(chest.key);
+                if (worldChests.size() == 0) {
+                    chestsByWorld.remove(chest.world);
+                }
+            }
+        } else {
+            for (IndexedChest previous = head; previous != null; previous = previous.next) {
+                if (previous.next == chest) {
+                    previous.next = chest.next;
+                    break;
+                }
+            }
+        }
+        chest.next = null;
+    }
+
+    /**
+     * Busca el contenedor de loot registrado en un bloque
+     * @param block Bloque a consultar
+     * @return Contenedor registrado en ese bloque, o null si no hay ninguno o el tipo de bloque no coincide
+     */
+    public IndexedChest get(Block block) {
+        PositionTable worldChests = chestsByWorld.get(block.getWorld().getName());
+        if (worldChests == null) {
+            return null;
+        }
+
+        // Sin contenedor, o el bloque ha sido reemplazado por otro tipo: se prueba el siguiente
+        for (IndexedChest chest = worldChests.get(pack(block.getX(), block.getY(), block.getZ())); chest != null; chest = chest.next) {
+            if (chest.matches(block)) {
+                return chest;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene el número de contenedores indexados
+     * @return Número de contenedores
+     */
+    public int size() {
+        return chestsByName.size();
+    }
+
+    /**
+     * Entrada del índice con los datos necesarios para identificar un contenedor
+     */
+    public static final class IndexedChest {
+
+        private final String name;
+        private final String world;
+        private final long key;
+        private final Material blockType;
+        // Sin blockType en la configuración no se comprueba el tipo
+        private final boolean anyBlock;
+        // Siguiente contenedor en la misma ubicación
+        private IndexedChest next;
+
+        private IndexedChest(String name, String world, long key, Material blockType, boolean anyBlock) {
+            this.name = name;
+            this.world = world;
+            this.key = key;
+            this.blockType = blockType;
+            this.anyBlock = anyBlock;
+        }
+
+        /**
+         * Obtiene el nombre del contenedor
+         * @return Nombre del contenedor
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Verifica si el tipo del bloque coincide con el registrado (para compatibilidad con versiones anteriores)
+         * @param block Bloque a comprobar
+         * @return true si no hay tipo registrado o si coincide; un tipo inválido nunca coincide
+         */
+        public boolean matches(Block block) {
+            return anyBlock || (blockType != null && block.getType() == blockType);
+        }
+    }
+
+    /**
+     * Tabla de direccionamiento abierto de coordenada empaquetada a la cadena de contenedores de
+     * esa ubicación, con las claves en un array de long para no crear objetos al consultar
+     */
+    private static final class PositionTable {
+
+        private long[] keys = new long[16];
+        private IndexedChest[] heads = new IndexedChest[16];
+        private int size;
+
+        private static int hash(long key) {
+            key ^= key >>> 33;
+            key *= 0xFF51AFD7ED558CCDL;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+
+        private int indexOf(long key) {
+            int mask = heads.length - 1;
+            int index = hash(key) & mask;
+            while (heads[index] != null) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1 - index; // Casilla libre donde insertar
+        }
+
+        IndexedChest get(long key) {
+            int index = indexOf(key);
+            return index >= 0 ? heads[index] : null;
+        }
+
+        void put(long key, IndexedChest head) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                heads[index] = head;
+                return;
+            }
+            index = -1 - index;
+            keys[index] = key;
+            heads[index] = head;
+            size++;
+
+            // Mantener el factor de carga por debajo de 0.75
+            if (size * 4 >= heads.length * 3) {
+                long[] oldKeys = keys;
+                IndexedChest[] oldHeads = heads;
+                keys = new long[oldKeys.length * 2];
+                heads = new IndexedChest[oldHeads.length * 2];
+                for (int i = 0; i < oldHeads.length; i++) {
+                    if (oldHeads[i] != null) {
+                        int slot = -1 - indexOf(oldKeys[i]);
+                        keys[slot] = oldKeys[i];
+                        heads[slot] = oldHeads[i];
+                    }
+                }
+            }
+        }
+
+        void remove(long key) {
+            int hole = indexOf(key);
+            if (hole < 0) {
+                return;
+            }
+            int mask = heads.length - 1;
+            int next = (hole + 1) & mask;
+
+            // Desplazar hacia atrás las entradas cuya posición ideal no queda entre el hueco y ellas
+            while (heads[next] != null) {
+                int ideal = hash(keys[next]) & mask;
+                if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    heads[hole] = heads[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+
+            heads[hole] = null;
+            size--;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
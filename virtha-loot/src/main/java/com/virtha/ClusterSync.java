@@ -0,0 +1,248 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Sincronización de cooldowns entre varios servidores con el mismo mapa.
+ * Las reclamaciones locales se encolan sin bloquear el hilo principal y un hilo asíncrono las
+ * envía agrupadas en mensajes pequeños a los demás nodos. Al recibir un mensaje, cada entrada
+ * se fusiona quedándose con la expiración más tardía, así que el orden de llegada no importa.
+ *
+ * Formato del mensaje: "VLCS", nodo de origen (short + UTF-8), número de entradas (int) y por
+ * cada entrada el cofre (short + UTF-8), el UUID (dos longs) y la expiración (long). Una
+ * expiración negativa es una lápida: la reclamación con esa expiración se liberó en el nodo de
+ * origen y se elimina en los demás si sigue siendo la misma.
+ */
+public class ClusterSync implements CooldownStore.ChangeListener {
+
+    private static final int MAGIC = 0x564C4353; // "VLCS"
+
+    private final VirthaLootPlugin plugin;
+    private final CooldownStore store;
+    private final String nodeId;
+    private final ClusterTransport transport;
+    private final int batchIntervalTicks;
+    private final int maxBatchSize;
+
+    private final ConcurrentLinkedQueue<Delta> outgoing = new ConcurrentLinkedQueue<>();
+    // Marca el hilo que está aplicando cambios remotos, para no reenviarlos
+    private final ThreadLocal<Boolean> applyingRemote = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final AtomicLong sentDeltas = new AtomicLong();
+    private final AtomicLong receivedDeltas = new AtomicLong();
+    private final AtomicLong appliedDeltas = new AtomicLong();
+    private BukkitTask sendTask;
+
+    /**
+     * Constructor de la sincronización a partir de la sección cluster de config.yml
+     * @param plugin Instancia del plugin principal
+     * @param store Almacén de cooldowns
+     * @param config Sección cluster de la configuración
+     */
+    public ClusterSync(VirthaLootPlugin plugin, CooldownStore store, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.store = store;
+        String configuredId = config.getString("node-id", "");
+        this.nodeId = configuredId == null || configuredId.isEmpty()
+                ? UUID.randomUUID().toString().substring(0, 8) : configuredId;
+        this.batchIntervalTicks = Math.max(1, config.getInt("batch-interval-ticks", 2));
+        this.maxBatchSize = Math.max(1, config.getInt("max-batch-size", 512));
+
+        String transportName = config.getString("transport", "loopback");
+        if ("file-socket".equalsIgnoreCase(transportName)) {
+            File directory = new File(config.getString("socket-directory", "/tmp/virtha-loot-cluster"));
+            this.transport = new FileSocketTransport(directory, nodeId, plugin.getLogger());
+        } else {
+            if (!"loopback".equalsIgnoreCase(transportName)) {
+                plugin.getLogger().warning("Transporte de clúster desconocido '" + transportName + "', se usará 'loopback'");
+            }
+            this.transport = new LoopbackTransport(config.getString("channel", "virtha-loot"));
+        }
+    }
+
+    /**
+     * Abre el transporte, empieza a seguir los cambios del almacén y programa el envío periódico
+     * @return true si el transporte se abrió correctamente
+     */
+    public boolean start() {
+        try {
+            transport.start(this::onMessage);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo abrir el transporte del clúster", e);
+            return false;
+        }
+
+        store.addListener(this);
+        sendTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sendPending,
+                batchIntervalTicks, batchIntervalTicks);
+        plugin.getLogger().info("Sincronización de cooldowns activa como nodo '" + nodeId + "' (" + transport.getName() + ")");
+        return true;
+    }
+
+    /**
+     * Envía los cambios pendientes y cierra el transporte
+     */
+    public void shutdown() {
+        if (sendTask != null) {
+            sendTask.cancel();
+            sendTask = null;
+        }
+        sendPending();
+        transport.close();
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Solo se difunden las reclamaciones locales; las eliminaciones por expiración ocurren en cada nodo
+        if (expiry > 0 && !applyingRemote.get()) {
+            outgoing.add(new Delta(store.getChestName(chestId), playerMost, playerLeast, expiry));
+        }
+    }
+
+    @Override
+    public void onReleased(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Sin la lápida los demás nodos volverían a enviar la reclamación y putIfLater la restauraría
+        if (!applyingRemote.get()) {
+            outgoing.add(new Delta(store.getChestName(chestId), playerMost, playerLeast, -expiry));
+        }
+    }
+
+    private synchronized void sendPending() {
+        List<Delta> batch = new ArrayList<>();
+        Delta delta;
+        while ((delta = outgoing.poll()) != null) {
+            batch.add(delta);
+            if (batch.size() >= maxBatchSize) {
+                send(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<Delta> batch) {
+        byte[] nodeBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + 2 + nodeBytes.length + 4;
+        for (Delta delta : batch) {
+            size += 2 + delta.chestName.length + 8 + 8 + 8;
+        }
+
+        ByteBuffer message = ByteBuffer.allocate(size);
+        message.putInt(MAGIC).putShort((short) nodeBytes.length).put(nodeBytes).putInt(batch.size());
+        for (Delta delta : batch) {
+            message.putShort((short) delta.chestName.length).put(delta.chestName)
+                    .putLong(delta.playerMost).putLong(delta.playerLeast).putLong(delta.expiry);
+        }
+
+        try {
+            transport.broadcast(message.array());
+            sentDeltas.addAndGet(batch.size());
+        } catch (IOException e) {
+            // Los cambios ya están aplicados en este nodo; los demás se pondrán al día con las siguientes reclamaciones
+            plugin.getLogger().log(Level.WARNING, "No se pudieron enviar " + batch.size() + " cambios al clúster", e);
+        }
+    }
+
+    private void onMessage(byte[] bytes) {
+        ByteBuffer message = ByteBuffer.wrap(bytes);
+        applyingRemote.set(Boolean.TRUE);
+        try {
+            if (message.getInt() != MAGIC) {
+                plugin.getLogger().warning("Mensaje del clúster desconocido, se ignora");
+                return;
+            }
+            readString(message); // Nodo de origen, solo informativo
+            int count = message.getInt();
+            for (int i = 0; i < count; i++) {
+                String chestName = readString(message);
+                long playerMost = message.getLong();
+                long playerLeast = message.getLong();
+                long expiry = message.getLong();
+                receivedDeltas.incrementAndGet();
+
+                // Gana la expiración más tardía; una lápida solo borra la reclamación que libera
+                boolean applied = expiry < 0
+                        ? store.release(store.chestId(chestName), playerMost, playerLeast, -expiry)
+                        : store.putIfLater(store.chestId(chestName), playerMost, playerLeast, expiry);
+                if (applied) {
+                    appliedDeltas.incrementAndGet();
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            plugin.getLogger().warning("Mensaje del clúster incompleto, se ignora el resto");
+        } finally {
+            applyingRemote.set(Boolean.FALSE);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtiene la descripción del nodo y su transporte
+     * @return Identificador del nodo y nombre del transporte
+     */
+    public String getDescription() {
+        return nodeId + " - " + transport.getName();
+    }
+
+    /**
+     * Obtiene el número de cambios enviados a otros nodos
+     * @return Cambios enviados desde el inicio
+     */
+    public long getSentCount() {
+        return sentDeltas.get();
+    }
+
+    /**
+     * Obtiene el número de cambios recibidos de otros nodos
+     * @return Cambios recibidos desde el inicio
+     */
+    public long getReceivedCount() {
+        return receivedDeltas.get();
+    }
+
+    /**
+     * Obtiene el número de cambios recibidos que actualizaron el almacén local
+     * @return Cambios aplicados desde el inicio
+     */
+    public long getAppliedCount() {
+        return appliedDeltas.get();
+    }
+
+    /**
+     * Reclamación pendiente de enviar
+     */
+    private static final class Delta {
+
+        private final byte[] chestName;
+        private final long playerMost;
+        private final long playerLeast;
+        private final long expiry;
+
+        private Delta(String chestName, long playerMost, long playerLeast, long expiry) {
+            this.chestName = chestName.getBytes(StandardCharsets.UTF_8);
+            this.playerMost = playerMost;
+            this.playerLeast = playerLeast;
+            this.expiry = expiry;
+        }
+    }
+}
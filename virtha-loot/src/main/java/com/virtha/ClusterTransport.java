@@ -0,0 +1,48 @@
+package com.virtha;
+
+import java.io.IOException;
+
+/**
+ * Transporte de mensajes entre los nodos de un clúster de servidores.
+ * Cada mensaje enviado debe llegar al resto de nodos; el propio nodo no lo recibe.
+ * Se elige con la opción cluster.transport de config.yml.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Empieza a recibir mensajes
+     * @param receiver Receptor de los mensajes de otros nodos; puede invocarse desde cualquier hilo
+     * @throws IOException Si no se pudo abrir el transporte
+     */
+    void start(Receiver receiver) throws IOException;
+
+    /**
+     * Envía un mensaje a todos los demás nodos
+     * @param message Contenido del mensaje
+     * @throws IOException Si no se pudo enviar a ningún nodo por un error del transporte
+     */
+    void broadcast(byte[] message) throws IOException;
+
+    /**
+     * Cierra el transporte y libera sus recursos
+     */
+    void close();
+
+    /**
+     * Obtiene el nombre del transporte, para mostrarlo en las estadísticas
+     * @return Nombre del transporte
+     */
+    String getName();
+
+    /**
+     * Receptor de los mensajes de otros nodos
+     */
+    interface Receiver {
+
+        /**
+         * Se invoca por cada mensaje recibido
+         * @param message Contenido del mensaje
+         */
+        void onMessage(byte[] message);
+    }
+}
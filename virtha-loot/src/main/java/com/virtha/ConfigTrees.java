@@ -0,0 +1,78 @@
+package com.virtha;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utilidades para copiar árboles de configuración.
+ * Las copias solo contienen mapas, listas y valores inmutables, así que se pueden leer desde
+ * otro hilo o volcar en otra configuración sin compartir secciones con la original.
+ */
+public final class ConfigTrees {
+
+    private ConfigTrees() {
+    }
+
+    /**
+     * Copia una sección de configuración en un mapa
+     * @param section Sección a copiar
+     * @return Mapa con una copia profunda de los valores de la sección, en el mismo orden
+     */
+    public static Map<String, Object> toMap(ConfigurationSection section) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (String key : section.getKeys(false)) {
+            copy.put(key, copy(section.get(key)));
+        }
+        return copy;
+    }
+
+    /**
+     * Copia un valor de configuración
+     * @param value Valor a copiar; las secciones se convierten en mapas
+     * @return Copia profunda del valor
+     */
+    public static Object copy(Object value) {
+        if (value instanceof ConfigurationSection) {
+            return toMap((ConfigurationSection) value);
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        if (value instanceof ItemStack) {
+            return ((ItemStack) value).clone();
+        }
+        // Textos, números y booleanos son inmutables
+        return value;
+    }
+
+    /**
+     * Vuelca un mapa en una sección, recreando como secciones los mapas anidados
+     * @param target Sección destino
+     * @param values Valores a volcar, normalmente obtenidos con toMap
+     */
+    public static void copyInto(ConfigurationSection target, Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                target.createSection(entry.getKey(), (Map<?, ?>) entry.getValue());
+            } else {
+                target.set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package com.virtha;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario de escritura anticipada (WAL) de los cooldowns.
+ * Cada reclamación se añade como un registro de tamaño fijo al segmento actual, de modo que
+ * sobrevive a una caída del servidor sin reescribir el archivo de cooldowns. Los segmentos
+ * se sellan al compactar y se borran cuando una instantánea ya contiene sus datos.
+ *
+ * El segmento actual se proyecta en memoria (mmap), así que añadir un registro es una copia en
+ * memoria sin llamadas al sistema: el sistema operativo lo lleva a disco aunque el proceso caiga.
+ * La parte no usada del segmento queda a cero y la reproducción se detiene en ella. La
+ * sincronización con disco se hace fuera del monitor de escritura para no bloquear las reclamaciones.
+ * El siguiente segmento se crea y proyecta de antemano en un hilo aparte, de modo que al cambiar de
+ * segmento el monitor solo se toma para intercambiarlo; los segmentos sellados se liberan de memoria
+ * para que se puedan borrar.
+ *
+ * Formato de un segmento: cabecera "VLJ1" + número de segmento (long), seguida de registros
+ * terminados en un CRC32C. Los ids de cofre solo son válidos dentro de su segmento, por eso
+ * cada segmento declara el nombre de un cofre la primera vez que lo usa.
+ */
+public class CooldownJournal {
+
+    private static final int MAGIC = 0x564C4A31; // "VLJ1"
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte TYPE_CLAIM = 1;
+    private static final byte TYPE_CHEST = 2;
+    private static final byte TYPE_CLEAR = 3;
+    private static final byte TYPE_REMOVE = 4;
+
+    private static final int RECORD_BUFFER_SIZE = 1024;
+    // Margen tras segmentBytes: cabe una declaración de cofre y un registro antes de cambiar de segmento
+    private static final int SEGMENT_SLACK = 2 * RECORD_BUFFER_SIZE;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Sin acceso a Unsafe, las proyecciones se liberan cuando el recolector recoja el buffer
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File directory;
+    private final long segmentBytes;
+    private final Logger logger;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BUFFER_SIZE);
+    private final CRC32C crc = new CRC32C();
+
+    // Prepara el siguiente segmento y libera los sellados fuera del monitor de escritura
+    private final ExecutorService preparer;
+
+    private Segment current;
+    // Segmento ya creado y proyectado, listo para sustituir al actual
+    private Segment next;
+    private boolean preparing;
+    private boolean closed;
+    // Último número de segmento asignado; puede haber huecos si se descarta uno preparado
+    private long lastAllocated = -1;
+    private long segmentSize;
+    // Cofres ya declarados en el segmento actual
+    private final BitSet declaredChests = new BitSet();
+
+    /**
+     * Constructor del diario
+     * @param directory Directorio donde se guardan los segmentos
+     * @param segmentBytes Tamaño a partir del cual se empieza un segmento nuevo
+     * @param logger Logger donde se informan los registros dañados
+     */
+    public CooldownJournal(File directory, long segmentBytes, Logger logger) {
+        this.directory = directory;
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE - SEGMENT_SLACK);
+        this.logger = logger;
+        this.preparer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VirthaLoot-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reproduce los segmentos posteriores al indicado, en orden
+     * @param afterSegment Último segmento ya incluido en la instantánea
+     * @param replayer Receptor de los registros
+     * @return Número del último segmento encontrado en disco, o afterSegment si no hay ninguno
+     * @throws IOException Si no se pudo leer un segmento
+     */
+    public long replay(long afterSegment, Replayer replayer) throws IOException {
+        long lastSegment = afterSegment;
+        for (long number : listSegments()) {
+            lastSegment = Math.max(lastSegment, number);
+            if (number > afterSegment) {
+                replaySegment(segmentFile(number), number, replayer);
+            }
+        }
+        return lastSegment;
+    }
+
+    private void replaySegment(File file, long number, Replayer replayer) throws IOException {
+        ByteBuffer data;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = ByteBuffer.allocate((int) in.size());
+            while (data.hasRemaining() && in.read(data) >= 0) {
+                // Leer el segmento completo
+            }
+            data.flip();
+        }
+
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getLong() != number) {
+            logger.warning("Segmento del diario de cooldowns inválido: " + file.getName());
+            return;
+        }
+
+        Map<Integer, String> chestNames = new HashMap<>();
+        while (data.hasRemaining()) {
+            int start = data.position();
+            if (data.get(start) == 0) {
+                // Resto del segmento proyectado sin usar
+                return;
+            }
+            if (!readRecord(data, chestNames, replayer)) {
+                // Registro incompleto o dañado: normalmente la cola de una escritura interrumpida
+                logger.warning("Registro dañado en " + file.getName() + " (posición " + start + "), se ignora el resto del segmento");
+                return;
+            }
+        }
+    }
+
+    private boolean readRecord(ByteBuffer data, Map<Integer, String> chestNames, Replayer replayer) {
+        int start = data.position();
+        if (data.remaining() < 1 + 4) {
+            return false;
+        }
+
+        byte type = data.get();
+        int chestId = data.getInt();
+        long playerMost = 0;
+        long playerLeast = 0;
+        long expiry = 0;
+        String chestName = null;
+
+        switch (type) {
+            case TYPE_CLAIM:
+                // Tamaño fijo: tipo, cofre, UUID, expiración y CRC (33 bytes)
+                if (data.remaining() < 8 + 8 + 8 + 4) {
+                    return false;
+                }
+                playerMost = data.getLong();
+                playerLeast = data.getLong();
+                expiry = data.getLong();
+                break;
+            case TYPE_CHEST:
+                if (data.remaining() < 2) {
+                    return false;
+                }
+                int length = data.getShort() & 0xFFFF;
+                if (data.remaining() < length + 4) {
+                    return false;
+                }
+                byte[] nameBytes = new byte[length];
+                data.get(nameBytes);
+                chestName = new String(nameBytes, StandardCharsets.UTF_8);
+                break;
+            case TYPE_CLEAR:
+                if (data.remaining() < 4) {
+                    return false;
+                }
+                break;
+            case TYPE_REMOVE:
+                // Tipo, cofre, UUID y CRC (29 bytes)
+                if (data.remaining() < 8 + 8 + 4) {
+                    return false;
+                }
+                playerMost = data.getLong();
+                playerLeast = data.getLong();
+                break;
+            default:
+                return false;
+        }
+
+        int end = data.position();
+        int storedCrc = data.getInt();
+        crc.reset();
+        crc.update(data.duplicate().position(start).limit(end));
+        if ((int) crc.getValue() != storedCrc) {
+            return false;
+        }
+
+        if (type == TYPE_CHEST) {
+            chestNames.put(chestId, chestName);
+            return true;
+        }
+
+        String name = chestNames.get(chestId);
+        if (name == null) {
+            return false;
+        }
+        if (type == TYPE_CLAIM) {
+            replayer.onClaim(name, playerMost, playerLeast, expiry);
+        } else if (type == TYPE_REMOVE) {
+            replayer.onRemove(name, playerMost, playerLeast);
+        } else {
+            replayer.onClear(name);
+        }
+        return true;
+    }
+
+    /**
+     * Abre un segmento nuevo para escribir y empieza a preparar el siguiente
+     * @param number Número del segmento, mayor que cualquiera existente
+     * @throws IOException Si no se pudo crear el segmento
+     */
+    public void open(long number) throws IOException {
+        Segment opened = createSegment(number);
+        Segment previous;
+        synchronized (this) {
+            lastAllocated = Math.max(lastAllocated, number);
+            previous = install(opened);
+        }
+        retire(previous);
+    }
+
+    /**
+     * Añade una reclamación al diario
+     * @param chestId Id del cofre en el almacén
+     * @param chestName Nombre del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración en milisegundos
+     * @throws IOException Si no se pudo escribir el registro
+     */
+    public synchronized void appendClaim(int chestId, String chestName, long playerMost, long playerLeast, long expiry) throws IOException {
+        declareChest(chestId, chestName);
+
+        buffer.clear();
+        buffer.put(TYPE_CLAIM).putInt(chestId).putLong(playerMost).putLong(playerLeast).putLong(expiry);
+        finishRecord();
+    }
+
+    /**
+     * Añade al diario la eliminación del cooldown de un jugador, al liberar una reclamación
+     * @param chestId Id del cofre en el almacén
+     * @param chestName Nombre del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @throws IOException Si no se pudo escribir el registro
+     */
+    public synchronized void appendRemove(int chestId, String chestName, long playerMost, long playerLeast) throws IOException {
+        declareChest(chestId, chestName);
+
+        buffer.clear();
+        buffer.put(TYPE_REMOVE).putInt(chestId).putLong(playerMost).putLong(playerLeast);
+        finishRecord();
+    }
+
+    /**
+     * Añade al diario la eliminación de todos los cooldowns de un cofre
+     * @param chestId Id del cofre en el almacén
+     * @param chestName Nombre del cofre
+     * @throws IOException Si no se pudo escribir el registro
+     */
+    public synchronized void appendClear(int chestId, String chestName) throws IOException {
+        declareChest(chestId, chestName);
+
+        buffer.clear();
+        buffer.put(TYPE_CLEAR).putInt(chestId);
+        finishRecord();
+    }
+
+    private void declareChest(int chestId, String chestName) throws IOException {
+        if (current == null) {
+            throw new IOException("El diario de cooldowns no está abierto");
+        }
+        if (segmentSize >= segmentBytes) {
+            // Normalmente el siguiente segmento ya está preparado y solo se intercambia
+            Segment fresh = next;
+            next = null;
+            if (fresh == null) {
+                fresh = createSegment(++lastAllocated);
+            }
+            Segment full = install(fresh);
+            preparer.execute(() -> retire(full));
+        }
+        if (declaredChests.get(chestId)) {
+            return;
+        }
+
+        byte[] nameBytes = chestName.getBytes(StandardCharsets.UTF_8);
+        buffer.clear();
+        buffer.put(TYPE_CHEST).putInt(chestId).putShort((short) nameBytes.length).put(nameBytes);
+        finishRecord();
+        declaredChests.set(chestId);
+    }
+
+    private void finishRecord() {
+        crc.reset();
+        crc.update(buffer.duplicate().flip());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        segmentSize += buffer.remaining();
+        current.mapped.put(buffer);
+    }
+
+    /**
+     * Sella el segmento actual si tiene registros y empieza uno nuevo.
+     * El segmento nuevo se crea fuera del monitor, que solo se toma para intercambiarlo; el
+     * sellado se sincroniza con disco y se libera después, mientras las reclamaciones siguientes
+     * ya se escriben en el nuevo.
+     * @return Número del último segmento sellado; todos los anteriores también lo están
+     * @throws IOException Si no se pudo abrir el segmento nuevo
+     */
+    public long roll() throws IOException {
+        while (true) {
+            Segment fresh;
+            long number = -1;
+            synchronized (this) {
+                if (current == null || segmentSize <= HEADER_SIZE) {
+                    return current != null ? current.number - 1 : -1;
+                }
+                fresh = next;
+                next = null;
+                if (fresh == null) {
+                    number = ++lastAllocated;
+                }
+            }
+            if (fresh == null) {
+                fresh = createSegment(number);
+            }
+
+            Segment sealed = null;
+            synchronized (this) {
+                // Si entretanto el segmento se llenó y se cambió por otro posterior, se vuelve a intentar
+                if (current != null && fresh.number > current.number) {
+                    sealed = install(fresh);
+                }
+            }
+            if (sealed != null) {
+                retire(sealed);
+                return sealed.number;
+            }
+            discard(fresh);
+        }
+    }
+
+    /**
+     * Fuerza a disco los registros escritos, sin bloquear las reclamaciones mientras tanto
+     */
+    public void force() {
+        Segment segment;
+        synchronized (this) {
+            segment = current;
+        }
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Borra los segmentos cuyo contenido ya está incluido en una instantánea
+     * @param lastSegment Último segmento incluido
+     */
+    public void deleteUpTo(long lastSegment) {
+        for (long number : listSegments()) {
+            if (number <= lastSegment && !segmentFile(number).delete()) {
+                logger.warning("No se pudo borrar el segmento del diario " + number);
+            }
+        }
+    }
+
+    /**
+     * Cierra el segmento actual y descarta el preparado
+     * @throws IOException Si no se pudo sincronizar el segmento
+     */
+    public void close() throws IOException {
+        Segment last;
+        Segment spare;
+        synchronized (this) {
+            closed = true;
+            last = current;
+            spare = next;
+            current = null;
+            next = null;
+        }
+        preparer.shutdown();
+        try {
+            if (!preparer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("La preparación de segmentos del diario no terminó a tiempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        discard(spare);
+        if (last != null) {
+            last.release();
+        }
+    }
+
+    /**
+     * Instala un segmento como actual y pide preparar el siguiente. Se llama con el monitor tomado.
+     * @return Segmento que era el actual, o null
+     */
+    private Segment install(Segment fresh) {
+        Segment previous = current;
+        current = fresh;
+        segmentSize = HEADER_SIZE;
+        declaredChests.clear();
+        schedulePrepare();
+        return previous;
+    }
+
+    private void schedulePrepare() {
+        if (next != null || preparing || closed) {
+            return;
+        }
+        preparing = true;
+        long number = ++lastAllocated;
+        preparer.execute(() -> prepare(number));
+    }
+
+    private void prepare(long number) {
+        Segment prepared = null;
+        try {
+            prepared = createSegment(number);
+        } catch (IOException e) {
+            // Se reintenta al instalar el siguiente segmento; si hace falta antes, se crea en el momento
+            logger.warning("No se pudo preparar el segmento del diario " + number + ": " + e.getMessage());
+        }
+
+        synchronized (this) {
+            preparing = false;
+            // Un segmento anterior al actual ya no sirve: se creó otro en el momento al llenarse
+            if (prepared != null && !closed && current != null && number > current.number) {
+                next = prepared;
+                return;
+            }
+        }
+        discard(prepared);
+    }
+
+    /**
+     * Crea el archivo de un segmento, lo proyecta en memoria y escribe su cabecera. No toma el monitor.
+     */
+    private Segment createSegment(long number) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio " + directory);
+        }
+
+        File file = segmentFile(number);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // La proyección sigue siendo válida tras cerrar el canal
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes + SEGMENT_SLACK);
+            mapped.putInt(MAGIC).putLong(number);
+            return new Segment(number, file, mapped);
+        }
+    }
+
+    /**
+     * Sincroniza con disco un segmento que ya no es el actual y libera su proyección
+     */
+    private void retire(Segment segment) {
+        if (segment != null) {
+            segment.release();
+        }
+    }
+
+    /**
+     * Libera un segmento sin registros y borra su archivo
+     */
+    private void discard(Segment segment) {
+        if (segment == null) {
+            return;
+        }
+        segment.release();
+        if (!segment.file.delete()) {
+            logger.warning("No se pudo borrar el segmento del diario sin usar " + segment.number);
+        }
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, String.format("segment-%016d.log", number));
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("segment-") && name.endsWith(".log")) {
+                try {
+                    segments.add(Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length())));
+                } catch (NumberFormatException e) {
+                    logger.warning("Archivo desconocido en el diario de cooldowns: " + name);
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Segmento proyectado en memoria. Forzarlo a disco y liberar la proyección se excluyen entre
+     * sí, para que nunca se fuerce una proyección ya liberada.
+     */
+    private final class Segment {
+
+        private final long number;
+        private final File file;
+        private final MappedByteBuffer mapped;
+        private boolean released;
+
+        private Segment(long number, File file, MappedByteBuffer mapped) {
+            this.number = number;
+            this.file = file;
+            this.mapped = mapped;
+        }
+
+        private synchronized void force() {
+            if (!released) {
+                mapped.force();
+            }
+        }
+
+        /**
+         * Sincroniza el segmento con disco y libera su proyección, para que el archivo se pueda
+         * borrar también en sistemas que no permiten borrar archivos proyectados
+         */
+        private synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                mapped.force();
+            } finally {
+                unmap(mapped);
+            }
+        }
+    }
+
+    private void unmap(MappedByteBuffer mapped) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.FINE, "No se pudo liberar la proyección de un segmento del diario", e);
+        }
+    }
+
+    /**
+     * Receptor de los registros al reproducir el diario
+     */
+    public interface Replayer {
+
+        /**
+         * Se invoca por cada reclamación registrada
+         * @param chestName Nombre del cofre
+         * @param playerMost Bits más significativos del UUID
+         * @param playerLeast Bits menos significativos del UUID
+         * @param expiry Expiración en milisegundos
+         */
+        void onClaim(String chestName, long playerMost, long playerLeast, long expiry);
+
+        /**
+         * Se invoca por cada reclamación liberada
+         * @param chestName Nombre del cofre
+         * @param playerMost Bits más significativos del UUID
+         * @param playerLeast Bits menos significativos del UUID
+         */
+        void onRemove(String chestName, long playerMost, long playerLeast);
+
+        /**
+         * Se invoca cuando se eliminaron todos los cooldowns de un cofre
+         * @param chestName Nombre del cofre
+         */
+        void onClear(String chestName);
+    }
+}
@@ -0,0 +1,338 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Persistencia de los cooldowns en una instantánea binaria (cooldowns.dat) y un diario.
+ * Cada reclamación se añade al momento al diario (WAL) para que no se pierda si el servidor
+ * cae. Periódicamente, en un hilo asíncrono, se escribe una instantánea completa del almacén
+ * de forma atómica y se borran los segmentos del diario que ya quedan cubiertos por ella.
+ * Al arrancar se carga la instantánea y se reproducen los segmentos posteriores.
+ */
+public class CooldownPersistence implements CooldownRepository, CooldownStore.ChangeListener {
+
+    private final VirthaLootPlugin plugin;
+    private final CooldownStore store;
+    private final File snapshotFile;
+    private final File legacyFile;
+    private final int flushIntervalSeconds;
+    private final int maxDirtyEntries;
+    private final CooldownJournal journal;
+
+    // Cambios desde la última instantánea
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+
+    // Último segmento del diario incluido en la instantánea, solo se modifica dentro de flushLock
+    private long coveredSegment = -1;
+    private volatile boolean journalAvailable;
+    private BukkitTask flushTask;
+
+    /**
+     * Constructor de la persistencia de cooldowns
+     * @param plugin Instancia del plugin principal
+     * @param store Almacén de cooldowns
+     */
+    public CooldownPersistence(VirthaLootPlugin plugin, CooldownStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.snapshotFile = new File(plugin.getDataFolder(), "cooldowns.dat");
+        this.legacyFile = new File(plugin.getDataFolder(), "cooldowns.yml");
+        this.flushIntervalSeconds = Math.max(1, plugin.getConfig().getInt("storage.flush-interval", 30));
+        this.maxDirtyEntries = Math.max(1, plugin.getConfig().getInt("storage.max-dirty-entries", 5000));
+        long segmentBytes = Math.max(1, plugin.getConfig().getLong("storage.journal-segment-mb", 8)) * 1024 * 1024;
+        this.journal = new CooldownJournal(new File(plugin.getDataFolder(), "journal"), segmentBytes, plugin.getLogger());
+    }
+
+    /**
+     * Carga los cooldowns de la instantánea y del diario en el almacén, empieza a registrar los
+     * cambios y programa el guardado periódico asíncrono.
+     * Si solo existe el antiguo cooldowns.yml, se importa una vez y se renombra a cooldowns.yml.migrated.
+     */
+    @Override
+    public void start() {
+        synchronized (flushLock) {
+            long currentTime = System.currentTimeMillis();
+            boolean migrating = false;
+
+            if (snapshotFile.exists()) {
+                try {
+                    coveredSegment = CooldownSnapshot.read(snapshotFile, store, currentTime);
+                } catch (IOException e) {
+                    // Se conserva el archivo dañado para poder revisarlo; el diario se reproduce igualmente
+                    File corruptFile = new File(plugin.getDataFolder(), "cooldowns.dat.corrupt");
+                    plugin.getLogger().log(Level.SEVERE, "No se pudo leer cooldowns.dat, se renombra a " + corruptFile.getName(), e);
+                    if (!snapshotFile.renameTo(corruptFile)) {
+                        plugin.getLogger().warning("No se pudo renombrar cooldowns.dat");
+                    }
+                }
+            } else if (legacyFile.exists()) {
+                plugin.getLogger().info("Migrando cooldowns.yml al formato binario...");
+                coveredSegment = CooldownYamlConverter.importYaml(legacyFile, store, currentTime);
+                migrating = true;
+            }
+
+            replayJournal(currentTime);
+
+            if (migrating) {
+                migrateLegacyFile();
+            }
+        }
+
+        store.addListener(this);
+
+        long period = flushIntervalSeconds * 20L;
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushQuietly, period, period);
+    }
+
+    private void replayJournal(long currentTime) {
+        try {
+            long lastSegment = journal.replay(coveredSegment, new CooldownJournal.Replayer() {
+                @Override
+                public void onClaim(String chestName, long playerMost, long playerLeast, long expiry) {
+                    if (expiry > currentTime) {
+                        store.put(store.chestId(chestName), playerMost, playerLeast, expiry);
+                        // Lo reproducido aún no está en la instantánea: se guardará en el próximo volcado
+                        dirtyCount.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onRemove(String chestName, long playerMost, long playerLeast) {
+                    store.put(store.chestId(chestName), playerMost, playerLeast, 0L);
+                    dirtyCount.incrementAndGet();
+                }
+
+                @Override
+                public void onClear(String chestName) {
+                    store.removeChest(chestName);
+                    dirtyCount.incrementAndGet();
+                }
+            });
+            journal.open(lastSegment + 1);
+            journalAvailable = true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo abrir el diario de cooldowns, solo se usarán los guardados periódicos", e);
+        }
+    }
+
+    private void migrateLegacyFile() {
+        try {
+            dirtyCount.incrementAndGet();
+            flush();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo escribir cooldowns.dat, se mantiene cooldowns.yml", e);
+            return;
+        }
+
+        File migratedFile = new File(plugin.getDataFolder(), "cooldowns.yml.migrated");
+        if (legacyFile.renameTo(migratedFile)) {
+            plugin.getLogger().info("Cooldowns migrados a cooldowns.dat (" + store.size() + " entradas)");
+        } else {
+            plugin.getLogger().warning("No se pudo renombrar cooldowns.yml tras la migración");
+        }
+    }
+
+    /**
+     * Lee los cooldowns que dejó este backend (cooldowns.dat, o cooldowns.yml si no hay
+     * instantánea, más los segmentos del diario posteriores) para migrarlos a otro backend
+     * @param plugin Instancia del plugin principal
+     * @param target Almacén donde se cargan los cooldowns
+     * @param now Momento actual en milisegundos; las entradas expiradas se descartan
+     * @return true si había archivos que migrar
+     * @throws IOException Si no se pudo leer la instantánea o el diario
+     */
+    static boolean readForMigration(VirthaLootPlugin plugin, CooldownStore target, long now) throws IOException {
+        File snapshotFile = new File(plugin.getDataFolder(), "cooldowns.dat");
+        File legacyFile = new File(plugin.getDataFolder(), "cooldowns.yml");
+        File journalDirectory = new File(plugin.getDataFolder(), "journal");
+
+        long coveredSegment;
+        if (snapshotFile.exists()) {
+            coveredSegment = CooldownSnapshot.read(snapshotFile, target, now);
+        } else if (legacyFile.exists()) {
+            coveredSegment = CooldownYamlConverter.importYaml(legacyFile, target, now);
+        } else if (journalDirectory.isDirectory()) {
+            coveredSegment = -1;
+        } else {
+            return false;
+        }
+
+        CooldownJournal journal = new CooldownJournal(journalDirectory, Long.MAX_VALUE, plugin.getLogger());
+        try {
+            journal.replay(coveredSegment, new CooldownJournal.Replayer() {
+                @Override
+                public void onClaim(String chestName, long playerMost, long playerLeast, long expiry) {
+                    if (expiry > now) {
+                        target.put(target.chestId(chestName), playerMost, playerLeast, expiry);
+                    }
+                }
+
+                @Override
+                public void onRemove(String chestName, long playerMost, long playerLeast) {
+                    target.put(target.chestId(chestName), playerMost, playerLeast, 0L);
+                }
+
+                @Override
+                public void onClear(String chestName) {
+                    target.removeChest(chestName);
+                }
+            });
+        } finally {
+            journal.close();
+        }
+        return true;
+    }
+
+    /**
+     * Renombra a *.migrated los archivos de este backend ya migrados a otro, para que no se
+     * vuelvan a importar ni a reproducir si se vuelve a este backend
+     * @param plugin Instancia del plugin principal
+     */
+    static void markMigrated(VirthaLootPlugin plugin) {
+        for (String name : new String[] {"cooldowns.dat", "cooldowns.yml", "journal"}) {
+            File file = new File(plugin.getDataFolder(), name);
+            if (file.exists() && !file.renameTo(new File(plugin.getDataFolder(), name + ".migrated"))) {
+                plugin.getLogger().warning("No se pudo renombrar " + name + " tras la migración");
+            }
+        }
+    }
+
+    /**
+     * Detiene el guardado periódico y guarda los cambios pendientes en el hilo actual
+     */
+    @Override
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flushQuietly();
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "No se pudo cerrar el diario de cooldowns", e);
+        }
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Las eliminaciones por expiración no se registran: la instantánea y el diario descartan
+        // las entradas expiradas; las liberaciones llegan por onReleased
+        if (expiry <= 0) {
+            return;
+        }
+
+        if (journalAvailable) {
+            try {
+                journal.appendClaim(chestId, store.getChestName(chestId), playerMost, playerLeast, expiry);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+
+        if (dirtyCount.incrementAndGet() >= maxDirtyEntries) {
+            requestFlush();
+        }
+    }
+
+    @Override
+    public void onReleased(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Sin este registro la reclamación liberada volvería a aplicarse al reproducir el diario
+        if (journalAvailable) {
+            try {
+                journal.appendRemove(chestId, store.getChestName(chestId), playerMost, playerLeast);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+
+        if (dirtyCount.incrementAndGet() >= maxDirtyEntries) {
+            requestFlush();
+        }
+    }
+
+    @Override
+    public void onChestCleared(int chestId) {
+        if (journalAvailable) {
+            try {
+                journal.appendClear(chestId, store.getChestName(chestId));
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+        dirtyCount.incrementAndGet();
+        requestFlush();
+    }
+
+    private void journalFailed(IOException e) {
+        // Se desactiva el diario para no repetir el error en cada reclamación; los cambios
+        // siguen pendientes y se guardan en la próxima instantánea
+        journalAvailable = false;
+        plugin.getLogger().log(Level.SEVERE, "No se pudo escribir en el diario de cooldowns, se desactiva hasta reiniciar", e);
+        requestFlush();
+    }
+
+    /**
+     * Solicita un guardado asíncrono inmediato; varias solicitudes seguidas se agrupan en uno
+     */
+    public void requestFlush() {
+        if (flushRequested.compareAndSet(false, true) && plugin.isEnabled()) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, this::flushQuietly);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public int getPendingWrites() {
+        return dirtyCount.get();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo guardar el archivo cooldowns.dat", e);
+        }
+    }
+
+    /**
+     * Escribe una instantánea del almacén si hubo cambios y compacta el diario
+     * @throws IOException Si no se pudo escribir el archivo
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+
+            // Sellar el segmento actual: lo que contiene ya está aplicado en el almacén
+            long sealedSegment = journalAvailable ? journal.roll() : coveredSegment;
+            int changes = dirtyCount.get();
+            if (changes == 0 && sealedSegment <= coveredSegment) {
+                return;
+            }
+
+            long includedSegment = Math.max(sealedSegment, coveredSegment);
+            CooldownSnapshot.write(snapshotFile, store, includedSegment, System.currentTimeMillis());
+            dirtyCount.addAndGet(-changes);
+
+            // Compactación: los segmentos sellados ya están incluidos en la instantánea
+            if (sealedSegment > coveredSegment) {
+                journal.deleteUpTo(sealedSegment);
+                coveredSegment = sealedSegment;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.virtha;
+
+/**
+ * Backend de persistencia de los cooldowns.
+ * Cada implementación carga los cooldowns guardados en el almacén al arrancar y sigue sus
+ * cambios como {@link CooldownStore.ChangeListener} para guardarlos fuera del hilo principal.
+ * Se elige con la opción storage.backend de config.yml.
+ */
+public interface CooldownRepository {
+
+    /**
+     * Carga los cooldowns guardados en el almacén y empieza a registrar los cambios
+     */
+    void start();
+
+    /**
+     * Guarda los cambios pendientes y libera los recursos; se invoca al deshabilitar el plugin
+     */
+    void shutdown();
+
+    /**
+     * Obtiene el nombre del backend, para mostrarlo en las estadísticas
+     * @return Nombre del backend
+     */
+    String getName();
+
+    /**
+     * Obtiene el número de cambios aún no guardados
+     * @return Número de escrituras pendientes
+     */
+    int getPendingWrites();
+}
@@ -0,0 +1,124 @@
+package com.virtha;
+
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.PermissionAttachmentInfo;
+import org.bukkit.scoreboard.Team;
+
+import java.util.UUID;
+
+/**
+ * Alcance del cooldown de un contenedor (opción cooldown-scope).
+ * El almacén de cooldowns siempre se indexa por cofre y UUID; para los alcances compartidos
+ * se usa una clave sintética con los bits más significativos a 0, que nunca coincide con un
+ * jugador real porque los UUID de jugador llevan la versión en esos bits. Así un cofre global
+ * ocupa una única entrada y se reclama de forma atómica igual que uno por jugador.
+ */
+public enum CooldownScope {
+
+    /** Un cooldown por jugador (comportamiento por defecto) */
+    PLAYER,
+    /** Un único cooldown para todo el servidor: el primero que lo abre se lo lleva */
+    GLOBAL,
+    /** Un cooldown por equipo del scoreboard o por grupo de permisos */
+    GROUP;
+
+    /** Clave compartida de los cofres con alcance global */
+    public static final UUID GLOBAL_KEY = new UUID(0L, 0L);
+
+    /** Prefijo de los permisos que definen los grupos (virthaloot.group.&lt;grupo&gt;) */
+    public static final String GROUP_PERMISSION_PREFIX = "virthaloot.group.";
+
+    /**
+     * Obtiene el alcance a partir del valor de la configuración
+     * @param value Valor de cooldown-scope (player, global o group)
+     * @return Alcance correspondiente, PLAYER si no se indica o no se reconoce
+     */
+    public static CooldownScope fromConfig(String value) {
+        if (value != null) {
+            for (CooldownScope scope : values()) {
+                if (scope.name().equalsIgnoreCase(value)) {
+                    return scope;
+                }
+            }
+        }
+        return PLAYER;
+    }
+
+    /**
+     * Comprueba si una clave del almacén es compartida (global o de grupo) en lugar de un jugador
+     * @param playerMost Bits más significativos de la clave
+     * @return true si la clave es compartida
+     */
+    public static boolean isSharedKey(long playerMost) {
+        return playerMost == 0L;
+    }
+
+    /**
+     * Indica si el origen de los grupos configurado en cooldown-group son los permisos
+     * @param groupSource Valor de cooldown-group: "team" (equipo del scoreboard) o "permission" (virthaloot.group.&lt;grupo&gt;)
+     * @return true para "permission"; cualquier otro valor usa el equipo del scoreboard
+     */
+    public static boolean isPermissionGroupSource(String groupSource) {
+        return "permission".equalsIgnoreCase(groupSource);
+    }
+
+    /**
+     * Obtiene la clave con la que se guarda el cooldown de un jugador según este alcance.
+     * Con alcance de grupo consulta el scoreboard o los permisos, así que debe llamarse desde el hilo principal.
+     * @param player Jugador que abre el contenedor
+     * @param permissionGroup Si el grupo sale de los permisos en lugar del equipo del scoreboard
+     * @return Clave del almacén; si el jugador no pertenece a ningún grupo se usa su propio UUID
+     */
+    public UUID resolveKey(Player player, boolean permissionGroup) {
+        switch (this) {
+            case GLOBAL:
+                return GLOBAL_KEY;
+            case GROUP:
+                UUID groupKey = findGroupKey(player, permissionGroup);
+                return groupKey != null ? groupKey : player.getUniqueId();
+            default:
+                return player.getUniqueId();
+        }
+    }
+
+    /**
+     * Obtiene la clave compartida del grupo de un jugador. Debe llamarse desde el hilo principal.
+     * @param player Jugador
+     * @param permissionGroup Si el grupo sale de los permisos en lugar del equipo del scoreboard
+     * @return Clave del grupo, o null si el jugador no pertenece a ninguno
+     */
+    public static UUID findGroupKey(Player player, boolean permissionGroup) {
+        String group = permissionGroup ? findPermissionGroup(player) : findTeam(player);
+        return group != null ? groupKey(group) : null;
+    }
+
+    private static String findTeam(Player player) {
+        Team team = player.getScoreboard().getEntryTeam(player.getName());
+        return team != null ? "team:" + team.getName() : null;
+    }
+
+    private static String findPermissionGroup(Player player) {
+        // Si tiene varios grupos se elige el primero alfabéticamente, para que la clave sea estable
+        String group = null;
+        for (PermissionAttachmentInfo info : player.getEffectivePermissions()) {
+            String permission = info.getPermission();
+            if (info.getValue() && permission.startsWith(GROUP_PERMISSION_PREFIX)) {
+                String name = permission.substring(GROUP_PERMISSION_PREFIX.length());
+                if (group == null || name.compareTo(group) < 0) {
+                    group = name;
+                }
+            }
+        }
+        return group != null ? "permission:" + group : null;
+    }
+
+    private static UUID groupKey(String group) {
+        // FNV-1a de 64 bits; el 0 se reserva para la clave global
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < group.length(); i++) {
+            hash ^= group.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return new UUID(0L, hash != 0L ? hash : 1L);
+    }
+}
@@ -0,0 +1,191 @@
+package com.virtha;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Instantánea binaria de los cooldowns (cooldowns.dat).
+ *
+ * Formato, en orden big-endian:
+ * - Cabecera: "VLCD", versión (int), momento de creación (long), último segmento del diario
+ *   incluido (long), número de cofres (int) y número de registros (long).
+ * - Tabla de cofres: longitud (short) y nombre en UTF-8 de cada cofre.
+ * - Registros de 28 bytes ordenados por cofre y UUID: índice del cofre (int), UUID (dos longs)
+ *   y expiración (long).
+ * - CRC32C de todo lo anterior (int).
+ *
+ * La lectura se hace sobre el archivo mapeado en memoria y va directa al almacén, sin crear
+ * objetos por entrada.
+ */
+public final class CooldownSnapshot {
+
+    private static final int MAGIC = 0x564C4344; // "VLCD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8;
+    private static final int RECORD_SIZE = 4 + 8 + 8 + 8;
+
+    private CooldownSnapshot() {
+    }
+
+    /**
+     * Carga una instantánea en el almacén, descartando las entradas ya expiradas
+     * @param file Archivo de la instantánea
+     * @param store Almacén de cooldowns
+     * @param now Momento actual en milisegundos
+     * @return Último segmento del diario incluido en la instantánea
+     * @throws IOException Si no se pudo leer el archivo o su contenido no es válido
+     */
+    public static long read(File file, CooldownStore store, long now) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Tamaño de instantánea inválido: " + size);
+            }
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C crc = new CRC32C();
+            crc.update(data.duplicate().limit((int) size - 4));
+            if ((int) crc.getValue() != data.getInt((int) size - 4)) {
+                throw new IOException("Suma de comprobación incorrecta");
+            }
+
+            if (data.getInt() != MAGIC) {
+                throw new IOException("No es una instantánea de cooldowns");
+            }
+            int version = data.getInt();
+            if (version != VERSION) {
+                throw new IOException("Versión de instantánea no soportada: " + version);
+            }
+            data.getLong(); // Momento de creación, solo informativo
+            long journalSegment = data.getLong();
+            int chestCount = data.getInt();
+            long recordCount = data.getLong();
+
+            int[] chestIds = new int[chestCount];
+            for (int i = 0; i < chestCount; i++) {
+                byte[] nameBytes = new byte[data.getShort() & 0xFFFF];
+                data.get(nameBytes);
+                chestIds[i] = store.chestId(new String(nameBytes, StandardCharsets.UTF_8));
+            }
+
+            if (data.remaining() - 4 != recordCount * RECORD_SIZE) {
+                throw new IOException("Número de registros inconsistente");
+            }
+
+            for (long i = 0; i < recordCount; i++) {
+                int chestIndex = data.getInt();
+                long playerMost = data.getLong();
+                long playerLeast = data.getLong();
+                long expiry = data.getLong();
+                if (chestIndex < 0 || chestIndex >= chestCount) {
+                    throw new IOException("Índice de cofre inválido en el registro " + i);
+                }
+                if (expiry > now) {
+                    store.put(chestIds[chestIndex], playerMost, playerLeast, expiry);
+                }
+            }
+            return journalSegment;
+        }
+    }
+
+    /**
+     * Escribe una instantánea del contenido actual del almacén de forma atómica
+     * @param file Archivo de la instantánea
+     * @param store Almacén de cooldowns
+     * @param journalSegment Último segmento del diario incluido
+     * @param now Momento actual en milisegundos; las entradas expiradas no se escriben
+     * @return Número de registros escritos
+     * @throws IOException Si no se pudo escribir el archivo
+     */
+    public static long write(File file, CooldownStore store, long journalSegment, long now) throws IOException {
+        // Agrupar por cofre; forEach recorre las tablas de una en una
+        List<ChestRecords> chests = new ArrayList<>();
+        ChestRecords[] current = new ChestRecords[1];
+        store.forEach((chestId, playerMost, playerLeast, expiry) -> {
+            if (expiry <= now) {
+                return;
+            }
+            if (current[0] == null || current[0].chestId != chestId) {
+                current[0] = new ChestRecords(chestId, store.getChestName(chestId));
+                chests.add(current[0]);
+            }
+            current[0].add(playerMost, playerLeast, expiry);
+        });
+
+        long recordCount = 0;
+        int size = HEADER_SIZE + 4;
+        for (ChestRecords chest : chests) {
+            recordCount += chest.count;
+            size += 2 + chest.nameBytes.length + chest.count * RECORD_SIZE;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putInt(VERSION).putLong(now).putLong(journalSegment)
+                .putInt(chests.size()).putLong(recordCount);
+        for (ChestRecords chest : chests) {
+            data.putShort((short) chest.nameBytes.length).put(chest.nameBytes);
+        }
+        for (int chestIndex = 0; chestIndex < chests.size(); chestIndex++) {
+            chests.get(chestIndex).writeSorted(chestIndex, data);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int) crc.getValue());
+        data.flip();
+
+        AtomicFiles.write(file, data);
+        return recordCount;
+    }
+
+    /**
+     * Entradas de un cofre pendientes de escribir
+     */
+    private static final class ChestRecords {
+
+        private final int chestId;
+        private final byte[] nameBytes;
+        // Tripletas UUID (dos longs) + expiración
+        private long[] values = new long[3 * 16];
+        private int count;
+
+        private ChestRecords(int chestId, String chestName) {
+            this.chestId = chestId;
+            this.nameBytes = chestName.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private void add(long playerMost, long playerLeast, long expiry) {
+            if (3 * (count + 1) > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[3 * count] = playerMost;
+            values[3 * count + 1] = playerLeast;
+            values[3 * count + 2] = expiry;
+            count++;
+        }
+
+        private void writeSorted(int chestIndex, ByteBuffer data) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int cmp = Long.compare(values[3 * a], values[3 * b]);
+                return cmp != 0 ? cmp : Long.compare(values[3 * a + 1], values[3 * b + 1]);
+            });
+
+            for (int i : order) {
+                data.putInt(chestIndex).putLong(values[3 * i]).putLong(values[3 * i + 1]).putLong(values[3 * i + 2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package com.virtha;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Almacén de cooldowns de los contenedores de loot.
+ * Cada nombre de cofre se asocia a un id entero y cada cofre tiene una tabla de
+ * direccionamiento abierto indexada por los dos longs del UUID del jugador, con la
+ * expiración guardada como long primitivo. Así no se crean objetos por entrada.
+ */
+public final class CooldownStore {
+
+    // Nombre del cofre -> id
+    private final Map<String, Integer> chestIds = new ConcurrentHashMap<>();
+    // Id -> nombre del cofre y tabla (copia al escribir, solo crecen)
+    private volatile String[] chestNames = new String[0];
+    private volatile CooldownTable[] tables = new CooldownTable[0];
+    // Componentes que siguen los cambios del almacén (expiración, persistencia...)
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registra un componente que será notificado de cada cambio en el almacén
+     * @param listener Componente a notificar
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        for (ChangeListener listener : listeners) {
+            listener.onChange(chestId, playerMost, playerLeast, expiry);
+        }
+    }
+
+    private void notifyRemoved(int chestId, long playerMost, long playerLeast, long removedExpiry) {
+        for (ChangeListener listener : listeners) {
+            listener.onChange(chestId, playerMost, playerLeast, 0L);
+            listener.onRemoved(chestId, playerMost, playerLeast, removedExpiry);
+        }
+    }
+
+    /**
+     * Obtiene el id de un cofre, registrándolo si no existe
+     * @param chestName Nombre del cofre
+     * @return Id del cofre
+     */
+    public int chestId(String chestName) {
+        Integer id = chestIds.get(chestName);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = chestIds.get(chestName);
+            if (id != null) {
+                return id;
+            }
+
+            int newId = tables.length;
+            String[] names = Arrays.copyOf(chestNames, newId + 1);
+            CooldownTable[] newTables = Arrays.copyOf(tables, newId + 1);
+            names[newId] = chestName;
+            newTables[newId] = new CooldownTable();
+            chestNames = names;
+            tables = newTables;
+            chestIds.put(chestName, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Obtiene el id de un cofre sin registrarlo
+     * @param chestName Nombre del cofre
+     * @return Id del cofre, o -1 si no tiene cooldowns registrados
+     */
+    public int findChestId(String chestName) {
+        Integer id = chestIds.get(chestName);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Obtiene el nombre de un cofre a partir de su id
+     * @param chestId Id del cofre
+     * @return Nombre del cofre
+     */
+    public String getChestName(int chestId) {
+        return chestNames[chestId];
+    }
+
+    /**
+     * Obtiene la expiración del cooldown de un jugador en un cofre
+     * @param chestName Nombre del cofre
+     * @param playerId UUID del jugador
+     * @return Momento de expiración en milisegundos, o 0 si no hay cooldown registrado
+     */
+    public long get(String chestName, UUID playerId) {
+        int chestId = findChestId(chestName);
+        if (chestId < 0) {
+            return 0L;
+        }
+        return tables[chestId].get(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+    }
+
+    /**
+     * Obtiene la expiración de una entrada a partir del id del cofre y las dos mitades del UUID
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @return Momento de expiración en milisegundos, o 0 si no hay cooldown registrado
+     */
+    public long get(int chestId, long playerMost, long playerLeast) {
+        return tables[chestId].get(playerMost, playerLeast);
+    }
+
+    /**
+     * Intenta reclamar el cofre para un jugador de forma atómica.
+     * Si el jugador no tiene un cooldown activo se registra la nueva expiración.
+     * @param chestName Nombre del cofre
+     * @param playerId UUID del jugador
+     * @param now Momento actual en milisegundos
+     * @param expiry Nueva expiración en milisegundos
+     * @return 0 si se reclamó el cofre, o la expiración del cooldown activo en caso contrario
+     */
+    public long tryClaim(String chestName, UUID playerId, long now, long expiry) {
+        int chestId = chestId(chestName);
+        long playerMost = playerId.getMostSignificantBits();
+        long playerLeast = playerId.getLeastSignificantBits();
+        long current = tables[chestId].tryClaim(playerMost, playerLeast, now, expiry);
+        if (current == 0L) {
+            notifyChange(chestId, playerMost, playerLeast, expiry);
+        }
+        return current;
+    }
+
+    /**
+     * Registra una expiración sin comprobar el cooldown actual (usado al cargar datos)
+     * @param chestName Nombre del cofre
+     * @param playerId UUID del jugador
+     * @param expiry Expiración en milisegundos
+     */
+    public void put(String chestName, UUID playerId, long expiry) {
+        put(chestId(chestName), playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), expiry);
+    }
+
+    /**
+     * Registra una expiración a partir del id del cofre y las dos mitades del UUID
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración en milisegundos, 0 o negativa para eliminar la entrada
+     */
+    public void put(int chestId, long playerMost, long playerLeast, long expiry) {
+        if (expiry <= 0) {
+            long removedExpiry = tables[chestId].remove(playerMost, playerLeast);
+            if (removedExpiry != 0) {
+                notifyRemoved(chestId, playerMost, playerLeast, removedExpiry);
+            }
+        } else {
+            tables[chestId].put(playerMost, playerLeast, expiry);
+            notifyChange(chestId, playerMost, playerLeast, expiry);
+        }
+    }
+
+    /**
+     * Registra una expiración solo si es posterior a la actual (fusión "gana la última escritura")
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración en milisegundos
+     * @return true si se registró la nueva expiración
+     */
+    public boolean putIfLater(int chestId, long playerMost, long playerLeast, long expiry) {
+        if (expiry > 0 && tables[chestId].putIfGreater(playerMost, playerLeast, expiry)) {
+            notifyChange(chestId, playerMost, playerLeast, expiry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Elimina el cooldown de un jugador en un cofre
+     * @param chestName Nombre del cofre
+     * @param playerId UUID del jugador
+     */
+    public void remove(String chestName, UUID playerId) {
+        int chestId = findChestId(chestName);
+        if (chestId >= 0) {
+            put(chestId, playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), 0L);
+        }
+    }
+
+    /**
+     * Libera una reclamación que no llegó a usarse, por ejemplo porque el jugador se desconectó
+     * antes de recibir el loot. A diferencia de remove, la liberación se persiste y se difunde al
+     * clúster. Solo se elimina si la entrada conserva la expiración reclamada, para no borrar una
+     * reclamación posterior.
+     * @param chestName Nombre del cofre
+     * @param playerId UUID del jugador o clave compartida
+     * @param expiry Expiración registrada al reclamar
+     * @return true si se liberó la reclamación
+     */
+    public boolean release(String chestName, UUID playerId, long expiry) {
+        int chestId = findChestId(chestName);
+        return chestId >= 0 && release(chestId, playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), expiry);
+    }
+
+    /**
+     * Libera una reclamación a partir del id del cofre y las dos mitades del UUID
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración registrada al reclamar
+     * @return true si se liberó la reclamación
+     */
+    public boolean release(int chestId, long playerMost, long playerLeast, long expiry) {
+        if (!tables[chestId].removeIfEquals(playerMost, playerLeast, expiry)) {
+            return false;
+        }
+        notifyRemoved(chestId, playerMost, playerLeast, expiry);
+        for (ChangeListener listener : listeners) {
+            listener.onReleased(chestId, playerMost, playerLeast, expiry);
+        }
+        return true;
+    }
+
+    /**
+     * Descarga de memoria una entrada ya guardada en otro sitio, solo si conserva la expiración
+     * indicada. A diferencia de release, no se persiste ni se difunde como liberación.
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración guardada
+     * @return true si se descargó la entrada
+     */
+    public boolean evict(int chestId, long playerMost, long playerLeast, long expiry) {
+        if (tables[chestId].removeIfEquals(playerMost, playerLeast, expiry)) {
+            notifyRemoved(chestId, playerMost, playerLeast, expiry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Elimina una entrada solo si ya ha expirado (usado por el sistema de expiración)
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param now Momento actual en milisegundos
+     * @return true si la entrada existía y estaba expirada
+     */
+    public boolean removeIfExpired(int chestId, long playerMost, long playerLeast, long now) {
+        long removedExpiry = tables[chestId].removeIfExpired(playerMost, playerLeast, now);
+        if (removedExpiry != 0) {
+            notifyRemoved(chestId, playerMost, playerLeast, removedExpiry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Elimina todos los cooldowns de un cofre
+     * @param chestName Nombre del cofre
+     */
+    public void removeChest(String chestName) {
+        int chestId = findChestId(chestName);
+        if (chestId >= 0) {
+            tables[chestId].clear();
+            for (ChangeListener listener : listeners) {
+                listener.onChestCleared(chestId);
+            }
+        }
+    }
+
+    /**
+     * Recorre todas las entradas del almacén.
+     * Las entradas de cada cofre se copian bajo su bloqueo y se visitan después sin él, así que
+     * el visitante puede hacer E/S sin frenar las reclamaciones de ese cofre.
+     * @param visitor Función que recibe cada entrada
+     */
+    public void forEach(EntryVisitor visitor) {
+        CooldownTable[] currentTables = tables;
+        for (int chestId = 0; chestId < currentTables.length; chestId++) {
+            currentTables[chestId].forEach(chestId, visitor);
+        }
+    }
+
+    /**
+     * Recorre las entradas de un jugador en todos los cofres
+     * @param playerId UUID del jugador
+     * @param visitor Función que recibe cada entrada
+     */
+    public void forEachOfPlayer(UUID playerId, EntryVisitor visitor) {
+        long playerMost = playerId.getMostSignificantBits();
+        long playerLeast = playerId.getLeastSignificantBits();
+        CooldownTable[] currentTables = tables;
+        for (int chestId = 0; chestId < currentTables.length; chestId++) {
+            long expiry = currentTables[chestId].get(playerMost, playerLeast);
+            if (expiry != 0) {
+                visitor.visit(chestId, playerMost, playerLeast, expiry);
+            }
+        }
+    }
+
+    /**
+     * Elimina todas las entradas de un jugador
+     * @param playerId UUID del jugador
+     */
+    public void removePlayer(UUID playerId) {
+        long playerMost = playerId.getMostSignificantBits();
+        long playerLeast = playerId.getLeastSignificantBits();
+        int chestCount = tables.length;
+        for (int chestId = 0; chestId < chestCount; chestId++) {
+            put(chestId, playerMost, playerLeast, 0L);
+        }
+    }
+
+    /**
+     * Obtiene el número total de entradas almacenadas
+     * @return Número de entradas
+     */
+    public int size() {
+        int size = 0;
+        for (CooldownTable table : tables) {
+            size += table.size();
+        }
+        return size;
+    }
+
+    /**
+     * Componente que recibe los cambios del almacén. Se invoca fuera de los bloqueos internos,
+     * desde el hilo que realizó el cambio.
+     */
+    public interface ChangeListener {
+
+        /**
+         * Se invoca al registrar o eliminar la expiración de un jugador en un cofre
+         * @param chestId Id del cofre
+         * @param playerMost Bits más significativos del UUID
+         * @param playerLeast Bits menos significativos del UUID
+         * @param expiry Nueva expiración, o 0 si la entrada se eliminó
+         */
+        void onChange(int chestId, long playerMost, long playerLeast, long expiry);
+
+        /**
+         * Se invoca al eliminar la entrada de un jugador en un cofre, justo después de onChange con
+         * expiración 0. Como los avisos llegan fuera de los bloqueos, el de una eliminación puede
+         * llegar después del de una reclamación posterior desde otro hilo; la expiración eliminada
+         * permite no deshacer esa reclamación.
+         * @param chestId Id del cofre
+         * @param playerMost Bits más significativos del UUID
+         * @param playerLeast Bits menos significativos del UUID
+         * @param removedExpiry Expiración que tenía la entrada eliminada
+         */
+        default void onRemoved(int chestId, long playerMost, long playerLeast, long removedExpiry) {
+        }
+
+        /**
+         * Se invoca al eliminar todos los cooldowns de un cofre
+         * @param chestId Id del cofre
+         */
+        default void onChestCleared(int chestId) {
+        }
+
+        /**
+         * Se invoca al liberar una reclamación que no llegó a usarse, después de onChange con
+         * expiración 0. Las eliminaciones por expiración o al descargar un jugador no lo invocan.
+         * @param chestId Id del cofre
+         * @param playerMost Bits más significativos del UUID
+         * @param playerLeast Bits menos significativos del UUID
+         * @param expiry Expiración que tenía la reclamación liberada
+         */
+        default void onReleased(int chestId, long playerMost, long playerLeast, long expiry) {
+        }
+    }
+
+    /**
+     * Función que recibe las entradas del almacén al recorrerlo
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(int chestId, long playerMost, long playerLeast, long expiry);
+    }
+
+    /**
+     * Tabla de direccionamiento abierto con sondeo lineal de un solo cofre.
+     * Una expiración 0 marca una casilla vacía; el borrado desplaza las entradas
+     * siguientes hacia atrás para no dejar lápidas.
+     */
+    static final class CooldownTable {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] most;
+        private long[] least;
+        private long[] expiries;
+        private int size;
+
+        CooldownTable() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            most = new long[capacity];
+            least = new long[capacity];
+            expiries = new long[capacity];
+            size = 0;
+        }
+
+        private static int hash(long playerMost, long playerLeast) {
+            long h = playerMost ^ (playerLeast * 0x9E3779B97F4A7C15L);
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+
+        private int indexOf(long playerMost, long playerLeast) {
+            int mask = expiries.length - 1;
+            int index = hash(playerMost, playerLeast) & mask;
+            while (expiries[index] != 0) {
+                if (most[index] == playerMost && least[index] == playerLeast) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1 - index; // Casilla libre donde insertar
+        }
+
+        synchronized long get(long playerMost, long playerLeast) {
+            int index = indexOf(playerMost, playerLeast);
+            return index >= 0 ? expiries[index] : 0L;
+        }
+
+        synchronized long tryClaim(long playerMost, long playerLeast, long now, long expiry) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index >= 0) {
+                if (expiries[index] > now) {
+                    return expiries[index];
+                }
+                expiries[index] = expiry;
+                return 0L;
+            }
+            insert(-1 - index, playerMost, playerLeast, expiry);
+            return 0L;
+        }
+
+        synchronized void put(long playerMost, long playerLeast, long expiry) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index >= 0) {
+                expiries[index] = expiry;
+            } else {
+                insert(-1 - index, playerMost, playerLeast, expiry);
+            }
+        }
+
+        synchronized boolean putIfGreater(long playerMost, long playerLeast, long expiry) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index >= 0) {
+                if (expiries[index] >= expiry) {
+                    return false;
+                }
+                expiries[index] = expiry;
+            } else {
+                insert(-1 - index, playerMost, playerLeast, expiry);
+            }
+            return true;
+        }
+
+        private void insert(int index, long playerMost, long playerLeast, long expiry) {
+            most[index] = playerMost;
+            least[index] = playerLeast;
+            expiries[index] = expiry;
+            size++;
+
+            // Mantener el factor de carga por debajo de 0.75
+            if (size * 4 >= expiries.length * 3) {
+                resize(expiries.length * 2);
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldMost = most;
+            long[] oldLeast = least;
+            long[] oldExpiries = expiries;
+            allocate(capacity);
+
+            for (int i = 0; i < oldExpiries.length; i++) {
+                if (oldExpiries[i] != 0) {
+                    int index = -1 - indexOf(oldMost[i], oldLeast[i]);
+                    most[index] = oldMost[i];
+                    least[index] = oldLeast[i];
+                    expiries[index] = oldExpiries[i];
+                    size++;
+                }
+            }
+        }
+
+        /**
+         * @return Expiración eliminada, o 0 si no había entrada
+         */
+        synchronized long remove(long playerMost, long playerLeast) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index < 0) {
+                return 0L;
+            }
+            long expiry = expiries[index];
+            removeAt(index);
+            return expiry;
+        }
+
+        synchronized boolean removeIfEquals(long playerMost, long playerLeast, long expiry) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index < 0 || expiries[index] != expiry) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+
+        /**
+         * @return Expiración eliminada, o 0 si no había entrada o aún no había expirado
+         */
+        synchronized long removeIfExpired(long playerMost, long playerLeast, long now) {
+            int index = indexOf(playerMost, playerLeast);
+            if (index < 0 || expiries[index] > now) {
+                return 0L;
+            }
+            long expiry = expiries[index];
+            removeAt(index);
+            return expiry;
+        }
+
+        private void removeAt(int index) {
+            int mask = expiries.length - 1;
+            int hole = index;
+            int next = (hole + 1) & mask;
+
+            // Desplazar hacia atrás las entradas cuya posición ideal no queda entre el hueco y ellas
+            while (expiries[next] != 0) {
+                int ideal = hash(most[next], least[next]) & mask;
+                if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                    most[hole] = most[next];
+                    least[hole] = least[next];
+                    expiries[hole] = expiries[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+
+            expiries[hole] = 0L;
+            size--;
+        }
+
+        synchronized void clear() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        void forEach(int chestId, EntryVisitor visitor) {
+            long[] copyMost;
+            long[] copyLeast;
+            long[] copyExpiries;
+            synchronized (this) {
+                copyMost = new long[size];
+                copyLeast = new long[size];
+                copyExpiries = new long[size];
+                int count = 0;
+                for (int i = 0; i < expiries.length; i++) {
+                    if (expiries[i] != 0) {
+                        copyMost[count] = most[i];
+                        copyLeast[count] = least[i];
+                        copyExpiries[count] = expiries[i];
+                        count++;
+                    }
+                }
+            }
+
+            for (int i = 0; i < copyExpiries.length; i++) {
+                visitor.visit(chestId, copyMost[i], copyLeast[i], copyExpiries[i]);
+            }
+        }
+    }
+}
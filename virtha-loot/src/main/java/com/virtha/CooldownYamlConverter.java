@@ -0,0 +1,72 @@
+package com.virtha;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Conversión entre el antiguo formato cooldowns.yml y el almacén de cooldowns.
+ * Se usa para migrar una sola vez al formato binario y para exportar los cooldowns
+ * a YAML al depurar.
+ */
+public final class CooldownYamlConverter {
+
+    private CooldownYamlConverter() {
+    }
+
+    /**
+     * Importa un archivo cooldowns.yml al almacén, descartando las entradas ya expiradas
+     * @param file Archivo YAML
+     * @param store Almacén de cooldowns
+     * @param now Momento actual en milisegundos
+     * @return Último segmento del diario incluido en el archivo, o -1 si no consta
+     */
+    public static long importYaml(File file, CooldownStore store, long now) {
+        YamlConfiguration document = YamlConfiguration.loadConfiguration(file);
+
+        ConfigurationSection cooldownsSection = document.getConfigurationSection("cooldowns");
+        if (cooldownsSection != null) {
+            for (String chestName : cooldownsSection.getKeys(false)) {
+                ConfigurationSection chestSection = cooldownsSection.getConfigurationSection(chestName);
+                if (chestSection == null) {
+                    continue;
+                }
+
+                for (String playerIdStr : chestSection.getKeys(false)) {
+                    long cooldownTime = chestSection.getLong(playerIdStr);
+                    if (cooldownTime > now) {
+                        store.put(chestName, UUID.fromString(playerIdStr), cooldownTime);
+                    }
+                }
+            }
+        }
+
+        return document.getLong("journal-segment", -1);
+    }
+
+    /**
+     * Exporta el contenido actual del almacén a un archivo YAML con el formato de cooldowns.yml
+     * @param file Archivo destino
+     * @param store Almacén de cooldowns
+     * @param now Momento actual en milisegundos; las entradas expiradas no se exportan
+     * @return Número de entradas exportadas
+     * @throws IOException Si no se pudo escribir el archivo
+     */
+    public static int exportYaml(File file, CooldownStore store, long now) throws IOException {
+        YamlConfiguration document = new YamlConfiguration();
+        int[] exported = new int[1];
+        store.forEach((chestId, playerMost, playerLeast, expiry) -> {
+            if (expiry > now) {
+                document.set("cooldowns." + store.getChestName(chestId) + "." + new UUID(playerMost, playerLeast), expiry);
+                exported[0]++;
+            }
+        });
+
+        AtomicFiles.write(file, document.saveToString().getBytes(StandardCharsets.UTF_8));
+        return exported[0];
+    }
+}
@@ -0,0 +1,160 @@
+package com.virtha;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rueda de temporización jerárquica que elimina del almacén los cooldowns expirados.
+ * Tiene cuatro niveles de 64 casillas con resolución de un segundo (64 s, ~68 min, ~3 días
+ * y ~194 días). Cada entrada se programa en O(1) y baja de nivel a medida que se acerca
+ * su expiración, así que el coste amortizado por entrada es constante.
+ */
+public final class ExpiryWheel implements CooldownStore.ChangeListener {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final CooldownStore store;
+    private final Node[][] wheel = new Node[LEVELS][SLOTS];
+    private final AtomicLong evicted = new AtomicLong();
+    // Segundo hasta el que se ha avanzado la rueda
+    private long currentTick;
+    private int pending;
+
+    /**
+     * Constructor de la rueda
+     * @param store Almacén de cooldowns del que se eliminan las entradas expiradas
+     * @param now Momento actual en milisegundos
+     */
+    public ExpiryWheel(CooldownStore store, long now) {
+        this.store = store;
+        this.currentTick = now / 1000;
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        if (expiry > 0) {
+            schedule(chestId, playerMost, playerLeast, expiry);
+        }
+    }
+
+    /**
+     * Programa la expiración de una entrada
+     * @param chestId Id del cofre
+     * @param playerMost Bits más significativos del UUID
+     * @param playerLeast Bits menos significativos del UUID
+     * @param expiry Expiración en milisegundos
+     */
+    public synchronized void schedule(int chestId, long playerMost, long playerLeast, long expiry) {
+        insert(new Node(chestId, playerMost, playerLeast, expiry));
+        pending++;
+    }
+
+    private void insert(Node node) {
+        // Segundo en el que la entrada ya ha expirado (redondeo hacia arriba)
+        long tick = Math.max((node.expiry + 999) / 1000, currentTick + 1);
+        long delta = tick - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+
+        int slot = (int) ((tick >>> (BITS * level)) & MASK);
+        node.next = wheel[level][slot];
+        wheel[level][slot] = node;
+    }
+
+    /**
+     * Avanza la rueda hasta el momento indicado y elimina las entradas expiradas.
+     * Pensado para ejecutarse periódicamente desde el programador de tareas.
+     * @param now Momento actual en milisegundos
+     */
+    public void advance(long now) {
+        long targetTick = now / 1000;
+        while (true) {
+            Node expired;
+            synchronized (this) {
+                if (currentTick >= targetTick) {
+                    return;
+                }
+                currentTick++;
+                cascade();
+                int slot = (int) (currentTick & MASK);
+                expired = wheel[0][slot];
+                wheel[0][slot] = null;
+            }
+
+            // Eliminar fuera del bloqueo de la rueda; solo se borran las entradas que siguen expiradas
+            int fired = 0;
+            for (Node node = expired; node != null; node = node.next) {
+                fired++;
+                if (store.removeIfExpired(node.chestId, node.playerMost, node.playerLeast, now)) {
+                    evicted.incrementAndGet();
+                }
+            }
+
+            if (fired > 0) {
+                synchronized (this) {
+                    pending -= fired;
+                }
+            }
+        }
+    }
+
+    private void cascade() {
+        // Nivel más alto cuya casilla empieza en este segundo
+        int top = 0;
+        while (top < LEVELS - 1 && (currentTick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+
+        // Redistribuir de arriba hacia abajo para que cada entrada acabe en su nivel correcto
+        for (int level = top; level >= 1; level--) {
+            int slot = (int) ((currentTick >>> (BITS * level)) & MASK);
+            Node node = wheel[level][slot];
+            wheel[level][slot] = null;
+            while (node != null) {
+                Node next = node.next;
+                insert(node);
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Obtiene el número de entradas eliminadas por expiración desde el inicio
+     * @return Número de entradas eliminadas
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * Obtiene el número de expiraciones programadas pendientes
+     * @return Número de expiraciones pendientes
+     */
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Expiración programada de una entrada del almacén
+     */
+    private static final class Node {
+
+        private final int chestId;
+        private final long playerMost;
+        private final long playerLeast;
+        private final long expiry;
+        private Node next;
+
+        private Node(int chestId, long playerMost, long playerLeast, long expiry) {
+            this.chestId = chestId;
+            this.playerMost = playerMost;
+            this.playerLeast = playerLeast;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.virtha;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transporte entre nodos de la misma máquina mediante sockets de dominio Unix.
+ * Cada nodo escucha en &lt;directorio&gt;/&lt;nodo&gt;.sock y envía cada mensaje a todos los
+ * demás sockets del directorio, con un prefijo de longitud (int) por mensaje. Las conexiones
+ * salientes se reutilizan y se vuelven a abrir si el otro nodo se reinicia.
+ */
+public class FileSocketTransport implements ClusterTransport {
+
+    private static final String SUFFIX = ".sock";
+    // Tamaño máximo aceptado por mensaje, para no reservar memoria por un prefijo dañado
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private final File directory;
+    private final String nodeId;
+    private final Logger logger;
+    private final Path socketPath;
+
+    // Conexiones salientes por nombre de archivo del socket, solo se usan dentro de broadcast
+    private final Map<String, SocketChannel> peers = new HashMap<>();
+    // Conexiones entrantes, para cerrarlas al detener el transporte
+    private final Set<SocketChannel> inbound = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel server;
+    private volatile boolean running;
+
+    /**
+     * Constructor del transporte por sockets de dominio Unix
+     * @param directory Directorio compartido por los nodos
+     * @param nodeId Identificador de este nodo
+     * @param logger Logger donde se informan los errores de conexión
+     */
+    public FileSocketTransport(File directory, String nodeId, Logger logger) {
+        this.directory = directory;
+        this.nodeId = nodeId;
+        this.logger = logger;
+        this.socketPath = new File(directory, nodeId + SUFFIX).toPath();
+    }
+
+    @Override
+    public void start(Receiver receiver) throws IOException {
+        Files.createDirectories(directory.toPath());
+        // Un socket anterior de este mismo nodo queda huérfano si el servidor se cerró mal
+        Files.deleteIfExists(socketPath);
+
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        running = true;
+
+        Thread acceptor = new Thread(() -> acceptLoop(receiver), "VirthaLoot-Cluster-" + nodeId);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop(Receiver receiver) {
+        while (running) {
+            try {
+                SocketChannel connection = server.accept();
+                inbound.add(connection);
+                Thread reader = new Thread(() -> readLoop(connection, receiver), "VirthaLoot-Cluster-Reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error al aceptar una conexión del clúster", e);
+            }
+        }
+    }
+
+    private void readLoop(SocketChannel connection, Receiver receiver) {
+        try (SocketChannel channel = connection) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (running) {
+                lengthBuffer.clear();
+                if (!readFully(channel, lengthBuffer)) {
+                    return;
+                }
+                int length = lengthBuffer.getInt(0);
+                if (length < 0 || length > MAX_MESSAGE_SIZE) {
+                    logger.warning("Mensaje del clúster con longitud inválida: " + length);
+                    return;
+                }
+
+                ByteBuffer message = ByteBuffer.allocate(length);
+                if (!readFully(channel, message)) {
+                    return;
+                }
+                receiver.onMessage(message.array());
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.log(Level.FINE, "Conexión del clúster cerrada", e);
+            }
+        } finally {
+            inbound.remove(connection);
+        }
+    }
+
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void broadcast(byte[] message) throws IOException {
+        File[] sockets = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (sockets == null) {
+            throw new IOException("No se pudo leer el directorio del clúster " + directory);
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + message.length);
+        frame.putInt(message.length).put(message).flip();
+
+        for (File socket : sockets) {
+            String name = socket.getName();
+            if (socket.toPath().equals(socketPath)) {
+                continue;
+            }
+
+            boolean reused = peers.containsKey(name);
+            try {
+                send(socket, frame);
+            } catch (IOException e) {
+                closePeer(name);
+                // Una conexión reutilizada puede ser de una instancia anterior del nodo: se reintenta una vez
+                if (!reused || !retry(socket, frame)) {
+                    // El nodo está caído o el socket es de un nodo que ya no existe
+                    logger.log(Level.FINE, "No se pudo enviar al nodo " + name, e);
+                }
+            }
+        }
+    }
+
+    private boolean retry(File socket, ByteBuffer frame) {
+        try {
+            send(socket, frame);
+            return true;
+        } catch (IOException e) {
+            closePeer(socket.getName());
+            return false;
+        }
+    }
+
+    private void send(File socket, ByteBuffer frame) throws IOException {
+        SocketChannel peer = peers.get(socket.getName());
+        if (peer == null) {
+            peer = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+            peers.put(socket.getName(), peer);
+        }
+        ByteBuffer data = frame.duplicate();
+        while (data.hasRemaining()) {
+            peer.write(data);
+        }
+    }
+
+    private void closePeer(String name) {
+        SocketChannel peer = peers.remove(name);
+        if (peer != null) {
+            try {
+                peer.close();
+            } catch (IOException ignored) {
+                // Ya estaba cerrada
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (this) {
+            for (String name : peers.keySet().toArray(new String[0])) {
+                closePeer(name);
+            }
+        }
+        for (SocketChannel connection : inbound) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // Ya estaba cerrada
+            }
+        }
+
+        try {
+            if (server != null) {
+                server.close();
+            }
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "No se pudo cerrar el socket del clúster", e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "file-socket (" + socketPath + ")";
+    }
+}
@@ -0,0 +1,166 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Último resultado del clic de cada jugador en un contenedor de loot, guardado por bloque y tick.
+ * PlayerInteractEvent se lanza una vez por mano y los jugadores repiten el clic sobre cofres en
+ * cooldown, así que el evento duplicado de la otra mano en el mismo tick y los clics repetidos
+ * sobre un cofre que sigue en cooldown se resuelven sin volver a comprobar el cofre. El mensaje
+ * de cooldown se envía como mucho una vez por intervalo configurado. Todo se usa desde el hilo
+ * principal.
+ */
+public class InteractionCache {
+
+    private final VirthaLootPlugin plugin;
+    private long cacheMillis;
+    private long messageIntervalMillis;
+
+    private final Map<UUID, LastInteraction> interactions = new HashMap<>();
+    private BukkitTask tickTask;
+    // Bukkit no expone el número de tick, así que se cuenta aquí
+    private long currentTick;
+
+    /**
+     * Constructor de la caché a partir de la sección interaction de config.yml
+     * @param plugin Instancia del plugin principal
+     * @param config Sección interaction, puede ser null
+     */
+    public InteractionCache(VirthaLootPlugin plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+        configure(config);
+    }
+
+    /**
+     * Aplica la sección interaction de config.yml. Los resultados guardados pertenecen a la
+     * instantánea anterior y ya no se usan tras publicar la nueva.
+     * @param config Sección interaction, puede ser null
+     */
+    public void configure(ConfigurationSection config) {
+        this.cacheMillis = Math.max(0L, config != null ? config.getLong("cache-millis", 1000L) : 1000L);
+        this.messageIntervalMillis = Math.max(0L, config != null ? config.getLong("cooldown-message-interval-millis", 2000L) : 2000L);
+    }
+
+    /**
+     * Empieza a contar los ticks
+     */
+    public void start() {
+        tickTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> currentTick++, 1L, 1L);
+    }
+
+    /**
+     * Detiene el contador de ticks y vacía la caché
+     */
+    public void shutdown() {
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+        interactions.clear();
+    }
+
+    /**
+     * Resuelve con el resultado guardado un clic repetido del jugador en el mismo bloque: el
+     * evento de la otra mano en el mismo tick se ignora y un clic sobre un cofre que sigue en
+     * cooldown solo envía el mensaje si ha pasado el intervalo
+     * @param player Jugador que hace clic
+     * @param block Bloque pulsado
+     * @param snapshot Instantánea de configuración actual; un resultado de otra instantánea no vale
+     * @param now Momento actual en milisegundos
+     * @return true si el clic ya está resuelto; false si hay que comprobar el cofre
+     */
+    public boolean handleRepeatedClick(Player player, Block block, LootSnapshot snapshot, long now) {
+        LastInteraction last = interactions.get(player.getUniqueId());
+        if (last == null || last.snapshot != snapshot || !last.matches(block)) {
+            return false;
+        }
+        if (last.tick == currentTick) {
+            // Evento de la otra mano, o repetido, en el mismo tick
+            return true;
+        }
+        if (now < last.cooldownExpiry && now - last.checkedAt < cacheMillis) {
+            sendCooldownMessage(player, last, now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Guarda el resultado de un clic en un contenedor de loot
+     * @param player Jugador que hizo clic
+     * @param block Bloque pulsado
+     * @param snapshot Instantánea de configuración con la que se comprobó
+     * @param chestName Nombre del contenedor
+     * @param cooldownExpiry Momento en que termina el cooldown del jugador en el contenedor, o 0 si no tiene
+     * @param now Momento actual en milisegundos
+     * @return Resultado guardado
+     */
+    public LastInteraction record(Player player, Block block, LootSnapshot snapshot, String chestName,
+                                  long cooldownExpiry, long now) {
+        LastInteraction last = interactions.computeIfAbsent(player.getUniqueId(), id -> new LastInteraction());
+        last.world = block.getWorld();
+        last.x = block.getX();
+        last.y = block.getY();
+        last.z = block.getZ();
+        last.snapshot = snapshot;
+        last.chestName = chestName;
+        last.cooldownExpiry = cooldownExpiry;
+        last.checkedAt = now;
+        last.tick = currentTick;
+        return last;
+    }
+
+    /**
+     * Envía el mensaje de cooldown si ha pasado el intervalo desde el último
+     * @param player Jugador en cooldown
+     * @param last Resultado guardado del clic
+     * @param now Momento actual en milisegundos
+     */
+    public void sendCooldownMessage(Player player, LastInteraction last, long now) {
+        if (now - last.lastMessageAt < messageIntervalMillis) {
+            return;
+        }
+        last.lastMessageAt = now;
+        long timeLeft = Math.max(0L, (last.cooldownExpiry - now) / 1000);
+        player.sendMessage(last.snapshot.getSettings().getCooldownMessage().render(player, last.chestName, timeLeft, 0));
+    }
+
+    /**
+     * Olvida el último clic de un jugador, al desconectarse
+     * @param playerId UUID del jugador
+     */
+    public void remove(UUID playerId) {
+        interactions.remove(playerId);
+    }
+
+    /**
+     * Último clic de un jugador en un contenedor de loot
+     */
+    public static final class LastInteraction {
+
+        private World world;
+        private int x;
+        private int y;
+        private int z;
+        private LootSnapshot snapshot;
+        private String chestName;
+        private long cooldownExpiry;
+        private long checkedAt;
+        private long tick;
+        // Se mantiene entre bloques: el intervalo del mensaje es por jugador
+        private long lastMessageAt = Long.MIN_VALUE / 2;
+
+        private boolean matches(Block block) {
+            return block.getX() == x && block.getY() == y && block.getZ() == z && block.getWorld() == world;
+        }
+    }
+}
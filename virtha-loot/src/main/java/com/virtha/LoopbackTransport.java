@@ -0,0 +1,61 @@
+package com.virtha;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transporte en memoria entre nodos del mismo proceso.
+ * Los nodos que usan el mismo canal se reciben los mensajes entre sí de forma síncrona,
+ * lo que permite probar la sincronización del clúster sin red.
+ */
+public class LoopbackTransport implements ClusterTransport {
+
+    // Canal -> nodos conectados
+    private static final Map<String, Set<LoopbackTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private volatile Receiver receiver;
+
+    /**
+     * Constructor del transporte en memoria
+     * @param channel Nombre del canal compartido por los nodos
+     */
+    public LoopbackTransport(String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        CHANNELS.computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public void broadcast(byte[] message) {
+        Set<LoopbackTransport> nodes = CHANNELS.get(channel);
+        if (nodes == null) {
+            return;
+        }
+        for (LoopbackTransport node : nodes) {
+            Receiver nodeReceiver = node.receiver;
+            if (node != this && nodeReceiver != null) {
+                nodeReceiver.onMessage(message.clone());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        CHANNELS.computeIfPresent(channel, (key, nodes) -> {
+            nodes.remove(this);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "loopback (" + channel + ")";
+    }
+}
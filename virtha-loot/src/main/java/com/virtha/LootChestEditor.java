@@ -522,14 +522,10 @@ public class LootChestEditor implements Listener {
         
         // Guardar la lista de comandos en la configuración
         plugin.getLootChestsConfig().set("chests." + chestName + ".commands", commandsList);
+        plugin.getLootManager().compile(chestName);
         
-        try {
-            plugin.getLootChestsConfig().save(plugin.getDataFolder() + "/lootchests.yml");
-            player.sendMessage("§aItems y comandos del cofre guardados correctamente.");
-        } catch (Exception e) {
-            player.sendMessage("§cError al guardar los items y comandos del cofre.");
-            plugin.getLogger().severe("Error al guardar lootchests.yml: " + e.getMessage());
-        }
+        plugin.saveChest(chestName, player);
+        player.sendMessage("§aItems y comandos del cofre guardados correctamente.");
     }
     
     /**
@@ -1339,13 +1335,9 @@ public class LootChestEditor implements Listener {
                                 
                                 // Guardar el comando en la configuración
                                 plugin.getLootChestsConfig().set("chests." + chestName + ".command", message);
-                                try {
-                                    plugin.getLootChestsConfig().save(plugin.getDataFolder() + "/lootchests.yml");
-                                    player.sendMessage("§aComando configurado correctamente: §f" + message);
-                                } catch (Exception e) {
-                                    player.sendMessage("§cError al guardar el comando.");
-                                    plugin.getLogger().severe("Error al guardar lootchests.yml: " + e.getMessage());
-                                }
+                                plugin.getLootManager().compile(chestName);
+                                plugin.saveChest(chestName, player);
+                                player.sendMessage("§aComando configurado correctamente: §f" + message);
                                 
                                 // Volver al menú de comandos
                                 openCommandMenu(player);
@@ -1475,16 +1467,12 @@ public class LootChestEditor implements Listener {
         
         // Guardar la lista ordenada
         plugin.getLootChestsConfig().set("chests." + chestName + ".items", sortableList);
-        try {
-            plugin.getLootChestsConfig().save(plugin.getDataFolder() + "/lootchests.yml");
-            player.sendMessage("§aItems ordenados por probabilidad correctamente.");
-            
-            // Reabrir el menú de edición de items para mostrar los cambios
-            openItemsMenu(player);
-        } catch (Exception e) {
-            player.sendMessage("§cError al ordenar los items del cofre.");
-            plugin.getLogger().severe("Error al guardar lootchests.yml: " + e.getMessage());
-        }
+        plugin.getLootManager().compile(chestName);
+        plugin.saveChest(chestName, player);
+        player.sendMessage("§aItems ordenados por probabilidad correctamente.");
+        
+        // Reabrir el menú de edición de items para mostrar los cambios
+        openItemsMenu(player);
     }
     
     /**
@@ -1,16 +1,15 @@
 package com.virtha;
 
-import org.bukkit.Material;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.enchantments.Enchantment;
+import org.bukkit.Location;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.logging.Logger;
 
 /**
  * Clase que maneja la generación de loot para los cofres personalizados
@@ -18,7 +17,6 @@ import java.util.Random;
 public class LootManager {
 
     private final VirthaLootPlugin plugin;
-    private final Random random;
 
     /**
      * Constructor del LootManager
@@ -26,145 +24,112 @@ public class LootManager {
      */
     public LootManager(VirthaLootPlugin plugin) {
         this.plugin = plugin;
-        this.random = new Random();
     }
 
     /**
-     * Genera items de loot para un jugador basado en la configuración del cofre
+     * Vuelve a compilar la tabla de loot y la ubicación de un cofre tras modificar su
+     * configuración, o las retira si el cofre se ha eliminado, y publica la instantánea resultante
+     * @param chestName Nombre del cofre de loot
+     */
+    public void compile(String chestName) {
+        plugin.publishSnapshot(plugin.getSnapshot().withChest(chestName, plugin.getLogger()));
+    }
+    
+    /**
+     * Obtiene la tabla de loot compilada de un cofre
+     * @param chestName Nombre del cofre de loot
+     * @return Tabla de loot, o null si el cofre no existe
+     */
+    public LootTable getLootTable(String chestName) {
+        return plugin.getSnapshot().getLootTables().get(chestName);
+    }
+    
+    /**
+     * Compila la tabla de loot de un cofre
+     * @param lootChests Definiciones de los contenedores
+     * @param chestName Nombre del cofre de loot
+     * @param settings Ajustes globales de los cofres
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Tabla de loot compilada
+     */
+    static LootTable compileTable(FileConfiguration lootChests, String chestName, Settings settings, Logger logger) {
+        return LootTable.compile(chestName, lootChests.getConfigurationSection("chests." + chestName),
+                settings.getMaxItemsPerChest(), settings.getBaseChanceMultiplier(), logger);
+    }
+
+    /**
+     * Genera items de loot para un jugador basado en la tabla compilada del cofre
      * @param player Jugador que recibirá el loot
      * @param chestName Nombre del cofre de loot
      * @return Lista de items generados
      */
     public List<ItemStack> generateLoot(Player player, String chestName) {
-        List<ItemStack> lootItems = new ArrayList<>();
-        
-        ConfigurationSection chestSection = plugin.getLootChestsConfig().getConfigurationSection("chests." + chestName);
-        if (chestSection == null) {
-            return lootItems;
-        }
-        
-        List<Map<?, ?>> itemsList = chestSection.getMapList("items");
-        if (itemsList == null || itemsList.isEmpty()) {
-            return lootItems;
+        LootTable lootTable = getLootTable(chestName);
+        if (lootTable == null) {
+            return new ArrayList<>();
         }
         
-        // Obtener configuración global
-        int maxItemsPerChest = plugin.getLootChestsConfig().getInt("settings.max-items-per-chest", 5);
-        double baseChanceMultiplier = plugin.getLootChestsConfig().getDouble("settings.base-chance-multiplier", 1.0);
-        
-        // Generar loot aleatorio
-        for (Map<?, ?> itemMap : itemsList) {
-            // Verificar si se alcanzó el máximo de items
-            if (lootItems.size() >= maxItemsPerChest) {
-                break;
-            }
-            
-            // Obtener propiedades del item
-            String materialName = (String) itemMap.get("material");
-            int amount = itemMap.containsKey("amount") && itemMap.get("amount") instanceof Integer ? (int) itemMap.get("amount") : 1;
-            double chance = itemMap.containsKey("chance") && itemMap.get("chance") instanceof Number ? ((Number) itemMap.get("chance")).doubleValue() : 100.0;
-            
-            // Aplicar multiplicador de probabilidad
-            chance *= baseChanceMultiplier;
-            
-            // Verificar si el item debe ser generado según su probabilidad
-            if (random.nextDouble() * 100 <= chance) {
-                try {
-                    Material material = Material.valueOf(materialName);
-                    ItemStack item = new ItemStack(material, amount);
-                    
-                    // Aplicar encantamientos si existen
-                    if (itemMap.containsKey("enchantments") && itemMap.get("enchantments") instanceof List) {
-                        List<?> enchantmentsList = (List<?>) itemMap.get("enchantments");
-                        for (Object enchObj : enchantmentsList) {
-                            if (enchObj instanceof Map) {
-                                Map<?, ?> enchMap = (Map<?, ?>) enchObj;
-                                String enchType = (String) enchMap.get("type");
-                                int level = enchMap.containsKey("level") && enchMap.get("level") instanceof Integer ? (int) enchMap.get("level") : 1;
-                                
-                                @SuppressWarnings("deprecation")
-                                Enchantment enchantment = Enchantment.getByName(enchType);
-                                if (enchantment != null) {
-                                    item.addUnsafeEnchantment(enchantment, level);
-                                }
-                            }
-                        }
-                    }
-                    
-                    // Aplicar nombre personalizado si existe
-                    if (itemMap.containsKey("name") && itemMap.get("name") instanceof String) {
-                        ItemMeta meta = item.getItemMeta();
-                        if (meta != null) {
-                            meta.setDisplayName((String) itemMap.get("name"));
-                            item.setItemMeta(meta);
-                        }
-                    }
-                    
-                    // Aplicar lore personalizado si existe
-                    if (itemMap.containsKey("lore") && itemMap.get("lore") instanceof List) {
-                        List<?> loreList = (List<?>) itemMap.get("lore");
-                        if (!loreList.isEmpty()) {
-                            List<String> lore = new ArrayList<>();
-                            for (Object line : loreList) {
-                                if (line instanceof String) {
-                                    lore.add((String) line);
-                                }
-                            }
-                            
-                            ItemMeta meta = item.getItemMeta();
-                            if (meta != null) {
-                                meta.setLore(lore);
-                                item.setItemMeta(meta);
-                            }
-                        }
-                    }
-                    
-                    lootItems.add(item);
-                } catch (IllegalArgumentException e) {
-                    plugin.getLogger().warning("Material inválido en la configuración del cofre " + chestName + ": " + materialName);
-                }
-            }
-        }
-        
-        return lootItems;
+        return lootTable.roll(plugin.getRandomService().current());
     }
     
     /**
      * Entrega items de loot a un jugador
      * @param player Jugador que recibirá el loot
+     * @param chestName Nombre del cofre, para el mensaje de loot
      * @param items Lista de items para entregar
+     * @param settings Ajustes de la instantánea con la que se abrió el cofre, para el sonido y el mensaje
      */
-    public void giveLoot(Player player, List<ItemStack> items) {
+    public void giveLoot(Player player, String chestName, List<ItemStack> items, Settings settings) {
         if (items.isEmpty()) {
             player.sendMessage("§cEste cofre no contiene ningún item.");
             return;
         }
         
-        // Entregar items al jugador
-        for (ItemStack item : items) {
-            // Si el inventario está lleno, soltar el item en el suelo
-            if (player.getInventory().firstEmpty() == -1) {
-                player.getWorld().dropItem(player.getLocation(), item);
-                player.sendMessage("§eTu inventario está lleno. El item ha sido soltado en el suelo.");
-            } else {
-                player.getInventory().addItem(item);
+        // Entregar todos los items de una vez; addItem completa primero las pilas a medio llenar
+        Map<Integer, ItemStack> leftovers = player.getInventory().addItem(items.toArray(new ItemStack[0]));
+        if (!leftovers.isEmpty()) {
+            // Soltar lo que no cabe en el suelo, agrupado en el menor número de pilas
+            Location location = player.getLocation();
+            int dropped = 0;
+            for (ItemStack stack : mergeStacks(leftovers.values())) {
+                player.getWorld().dropItem(location, stack);
+                dropped += stack.getAmount();
             }
+            player.sendMessage("§eTu inventario está lleno. Se han soltado §f" + dropped + " §eitems en el suelo.");
         }
         
-        // Reproducir sonido si está configurado
-        String soundName = plugin.getConfig().getString("settings.loot-sound", "ENTITY_PLAYER_LEVELUP");
-        float volume = (float) plugin.getConfig().getDouble("settings.sound-volume", 1.0);
-        float pitch = (float) plugin.getConfig().getDouble("settings.sound-pitch", 1.0);
-        
-        try {
-            player.playSound(player.getLocation(), soundName, volume, pitch);
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("Sonido inválido en la configuración: " + soundName);
+        // Reproducir sonido y mostrar mensaje de loot, ya resueltos al cargar la configuración
+        settings.playLootSound(player);
+        player.sendMessage(settings.getLootMessage().render(player, chestName, 0, items.size()));
+    }
+    
+    /**
+     * Agrupa los items iguales en pilas completas
+     * @param items Items a agrupar
+     * @return Pilas resultantes, respetando el tamaño máximo de cada material
+     */
+    private static List<ItemStack> mergeStacks(Collection<ItemStack> items) {
+        List<ItemStack> stacks = new ArrayList<>();
+        for (ItemStack item : items) {
+            int remaining = item.getAmount();
+            for (ItemStack stack : stacks) {
+                if (remaining == 0) {
+                    break;
+                }
+                int space = stack.getMaxStackSize() - stack.getAmount();
+                if (space > 0 && stack.isSimilar(item)) {
+                    int moved = Math.min(space, remaining);
+                    stack.setAmount(stack.getAmount() + moved);
+                    remaining -= moved;
+                }
+            }
+            while (remaining > 0) {
+                ItemStack stack = item.clone();
+                stack.setAmount(Math.min(remaining, item.getMaxStackSize()));
+                remaining -= stack.getAmount();
+                stacks.add(stack);
+            }
         }
-        
-        // Mostrar mensaje de loot
-        String message = plugin.getConfig().getString("settings.loot-message", "&a¡Has abierto un cofre de loot!");
-        message = message.replace("&", "§");
-        player.sendMessage(message);
+        return stacks;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.virtha;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.random.RandomGenerator;
+
+/**
+ * Grupo de loot con pesos compilado a partir de la sección "pools" de un cofre.
+ * Cada apertura realiza entre un mínimo y un máximo de tiradas, y cada tirada elige
+ * una entrada en O(1) mediante una tabla de alias.
+ */
+public final class LootPool {
+
+    private final int minRolls;
+    private final int maxRolls;
+    private final ItemStack[] prototypes;
+    private final AliasTable aliasTable;
+
+    private LootPool(int minRolls, int maxRolls, ItemStack[] prototypes, AliasTable aliasTable) {
+        this.minRolls = minRolls;
+        this.maxRolls = maxRolls;
+        this.prototypes = prototypes;
+        this.aliasTable = aliasTable;
+    }
+
+    /**
+     * Compila un grupo de loot de la configuración
+     * @param chestName Nombre del cofre (para los mensajes de error)
+     * @param poolMap Mapa con las propiedades del grupo
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Grupo compilado, o null si no tiene ninguna entrada válida
+     */
+    public static LootPool compile(String chestName, Map<?, ?> poolMap, Logger logger) {
+        // Las tiradas pueden ser un número fijo o un rango {min, max}
+        int minRolls = 1;
+        int maxRolls = 1;
+        Object rolls = poolMap.get("rolls");
+        if (rolls instanceof Number) {
+            minRolls = maxRolls = ((Number) rolls).intValue();
+        } else if (rolls instanceof Map) {
+            Map<?, ?> rollsMap = (Map<?, ?>) rolls;
+            minRolls = rollsMap.get("min") instanceof Number ? ((Number) rollsMap.get("min")).intValue() : 1;
+            maxRolls = rollsMap.get("max") instanceof Number ? ((Number) rollsMap.get("max")).intValue() : minRolls;
+        }
+        minRolls = Math.max(0, minRolls);
+        if (maxRolls < minRolls) {
+            logger.warning("Tiradas inválidas en un grupo del cofre " + chestName + ": max < min, se usará min");
+            maxRolls = minRolls;
+        }
+
+        List<ItemStack> prototypes = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        Object entries = poolMap.get("entries");
+        if (entries instanceof List) {
+            for (Object entryObj : (List<?>) entries) {
+                if (!(entryObj instanceof Map)) {
+                    continue;
+                }
+
+                Map<?, ?> entryMap = (Map<?, ?>) entryObj;
+                double weight = entryMap.get("weight") instanceof Number ? ((Number) entryMap.get("weight")).doubleValue() : 1.0;
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                    logger.warning("Peso inválido en un grupo del cofre " + chestName + ": " + entryMap.get("weight"));
+                    continue;
+                }
+
+                ItemStack prototype = LootTable.createPrototype(chestName, entryMap, logger);
+                if (prototype != null) {
+                    prototypes.add(prototype);
+                    weights.add(weight);
+                }
+            }
+        }
+
+        if (prototypes.isEmpty()) {
+            logger.warning("Un grupo del cofre " + chestName + " no tiene entradas válidas y será ignorado");
+            return null;
+        }
+
+        double[] weightArray = new double[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+        }
+
+        return new LootPool(minRolls, maxRolls, prototypes.toArray(new ItemStack[0]), new AliasTable(weightArray));
+    }
+
+    /**
+     * Realiza las tiradas del grupo y añade los items elegidos a la lista
+     * @param random Generador de números aleatorios
+     * @param lootItems Lista donde se añaden los items generados
+     */
+    public void roll(RandomGenerator random, List<ItemStack> lootItems) {
+        int rolls = minRolls == maxRolls ? minRolls : minRolls + random.nextInt(maxRolls - minRolls + 1);
+        for (int i = 0; i < rolls; i++) {
+            lootItems.add(prototypes[aliasTable.sample(random)].clone());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Instantánea de la configuración cargada: config.yml y sus ajustes ya resueltos, las
+ * definiciones de los contenedores, sus tablas de loot compiladas y el índice de ubicaciones.
+ * Se construye completa antes de publicarse y el plugin la publica con una única asignación
+ * volátil, así que una apertura en curso ve la instantánea anterior o la nueva, nunca una a
+ * medio cargar. Una vez publicada, su índice y sus tablas no se modifican: el editor y los
+ * comandos publican desde el hilo principal una copia con el contenedor modificado vuelto a
+ * compilar, igual que la recarga.
+ */
+public final class LootSnapshot {
+
+    private final FileConfiguration config;
+    private final FileConfiguration lootChests;
+    private final ChestLocationIndex index;
+    private final Map<String, LootTable> lootTables;
+    // Cofres con cooldown global o de grupo, cuya clave no es la del jugador
+    private final Set<String> sharedScopeChests = ConcurrentHashMap.newKeySet();
+    private final Settings settings;
+
+    private LootSnapshot(FileConfiguration config, FileConfiguration lootChests, ChestLocationIndex index,
+                         Map<String, LootTable> lootTables, Settings settings) {
+        this.config = config;
+        this.lootChests = lootChests;
+        this.index = index;
+        this.lootTables = lootTables;
+        this.settings = settings;
+        for (LootTable lootTable : lootTables.values()) {
+            if (lootTable.getCooldownScope() != CooldownScope.PLAYER) {
+                sharedScopeChests.add(lootTable.getChestName());
+            }
+        }
+    }
+
+    /**
+     * Lee y valida config.yml y las definiciones de los contenedores. No usa el hilo principal,
+     * así que se puede llamar desde un hilo asíncrono.
+     * @param plugin Instancia del plugin principal
+     * @param storage Almacenamiento de las definiciones de los contenedores
+     * @param errors Lista donde se añaden los problemas encontrados; si queda vacía la configuración es válida
+     * @return Instantánea cargada; con errores contiene solo lo que se pudo leer
+     */
+    public static LootSnapshot load(VirthaLootPlugin plugin, ChestFileStorage storage, List<String> errors) {
+        FileConfiguration config = loadConfig(plugin, errors);
+        FileConfiguration lootChests = storage.load(errors);
+        Settings settings = Settings.fromConfig(config, lootChests,
+                Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null, plugin.getLogger());
+
+        ChestLocationIndex index = new ChestLocationIndex(plugin.getLogger());
+        Map<String, LootTable> lootTables = new ConcurrentHashMap<>();
+        ConfigurationSection chestsSection = lootChests.getConfigurationSection("chests");
+        if (chestsSection != null) {
+            for (String chestName : chestsSection.getKeys(false)) {
+                ConfigurationSection chest = chestsSection.getConfigurationSection(chestName);
+                if (chest == null) {
+                    errors.add("El cofre '" + chestName + "' no es una sección válida");
+                    continue;
+                }
+                if (!index.put(chestName, chest.getString("location"), chest.getString("blockType"))) {
+                    errors.add("El cofre '" + chestName + "' no tiene una ubicación válida: " + chest.getString("location"));
+                }
+                Object cooldown = chest.get("cooldown");
+                if (cooldown != null && (!(cooldown instanceof Number) || ((Number) cooldown).intValue() < 0)) {
+                    errors.add("El cofre '" + chestName + "' tiene un cooldown inválido: " + cooldown);
+                }
+                lootTables.put(chestName, LootManager.compileTable(lootChests, chestName, settings, plugin.getLogger()));
+            }
+        }
+        return new LootSnapshot(config, lootChests, index, lootTables, settings);
+    }
+
+    private static FileConfiguration loadConfig(VirthaLootPlugin plugin, List<String> errors) {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(file);
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo leer config.yml", e);
+            errors.add("config.yml: " + e.getMessage());
+        }
+
+        // Los valores que falten se toman del config.yml incluido en el plugin
+        InputStream defaults = plugin.getResource("config.yml");
+        if (defaults != null) {
+            try (Reader reader = new InputStreamReader(defaults, StandardCharsets.UTF_8)) {
+                config.setDefaults(YamlConfiguration.loadConfiguration(reader));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "No se pudo leer el config.yml por defecto", e);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Sustituye la definición de un contenedor si ha cambiado. Debe llamarse desde el hilo principal.
+     * @param chestName Nombre del contenedor
+     * @param definition Nueva definición, o null si el contenedor se ha eliminado
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Instantánea a publicar con el contenedor vuelto a compilar, o esta misma si la
+     *         definición no ha cambiado
+     */
+    public LootSnapshot updateChest(String chestName, Map<String, Object> definition, Logger logger) {
+        String path = "chests." + chestName;
+        ConfigurationSection current = lootChests.getConfigurationSection(path);
+        if (Objects.equals(current != null ? ConfigTrees.toMap(current) : null, definition)) {
+            return this;
+        }
+
+        if (definition == null) {
+            lootChests.set(path, null);
+        } else {
+            lootChests.createSection(path, definition);
+        }
+        return withChest(chestName, logger);
+    }
+
+    /**
+     * Crea una instantánea con la tabla de loot y la entrada del índice de un contenedor vueltas
+     * a compilar desde su definición actual, o retiradas si ya no existe. El índice y el mapa de
+     * tablas se copian, así que esta instantánea no cambia mientras otros hilos la leen.
+     * Debe llamarse desde el hilo principal.
+     * @param chestName Nombre del contenedor
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Nueva instantánea, que hay que publicar
+     */
+    public LootSnapshot withChest(String chestName, Logger logger) {
+        ChestLocationIndex updatedIndex = index.copy();
+        Map<String, LootTable> updatedTables = new ConcurrentHashMap<>(lootTables);
+        String path = "chests." + chestName;
+        if (lootChests.isConfigurationSection(path)) {
+            updatedIndex.put(chestName, lootChests.getString(path + ".location"), lootChests.getString(path + ".blockType"));
+            updatedTables.put(chestName, LootManager.compileTable(lootChests, chestName, settings, logger));
+        } else {
+            updatedIndex.remove(chestName);
+            updatedTables.remove(chestName);
+        }
+        return new LootSnapshot(config, lootChests, updatedIndex, updatedTables, settings);
+    }
+
+    /**
+     * Obtiene config.yml
+     * @return Configuración general del plugin
+     */
+    public FileConfiguration getConfig() {
+        return config;
+    }
+
+    /**
+     * Obtiene los ajustes de uso frecuente ya resueltos
+     * @return Ajustes de esta instantánea
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Obtiene las definiciones de los contenedores combinadas (settings y chests.&lt;nombre&gt;)
+     * @return Configuración de los contenedores de loot
+     */
+    public FileConfiguration getLootChests() {
+        return lootChests;
+    }
+
+    /**
+     * Obtiene el índice de ubicaciones de los contenedores
+     * @return Índice de ubicaciones
+     */
+    public ChestLocationIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Obtiene las tablas de loot compiladas por nombre de contenedor
+     * @return Mapa concurrente con las tablas de loot
+     */
+    public Map<String, LootTable> getLootTables() {
+        return lootTables;
+    }
+
+    /**
+     * Obtiene los contenedores con cooldown global o de grupo
+     * @return Vista concurrente de sus nombres
+     */
+    public Set<String> getSharedScopeChests() {
+        return sharedScopeChests;
+    }
+}
@@ -0,0 +1,315 @@
+package com.virtha;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.random.RandomGenerator;
+
+/**
+ * Tabla de loot compilada e inmutable de un cofre.
+ * Se construye una sola vez a partir de lootchests.yml con los materiales y encantamientos
+ * ya resueltos y los items prototipo ya montados, de modo que generar loot solo requiere
+ * tirar las probabilidades y clonar prototipos.
+ * Un cofre puede combinar items con probabilidad independiente ("items", limitados por
+ * max-items-per-chest) y grupos con pesos ("pools", limitados por sus propias tiradas).
+ * Los comandos de recompensa ("command" y "commands") se compilan también aquí en plantillas.
+ */
+public final class LootTable {
+
+    private final String chestName;
+    private final List<Entry> entries;
+    private final List<LootPool> pools;
+    private final List<RewardCommand> commands;
+    private final CooldownScope cooldownScope;
+    private final boolean permissionGroup;
+    private final long cooldownMillis;
+    private final int maxItems;
+
+    private LootTable(String chestName, List<Entry> entries, List<LootPool> pools, List<RewardCommand> commands,
+                      CooldownScope cooldownScope, boolean permissionGroup, long cooldownMillis, int maxItems) {
+        this.chestName = chestName;
+        this.entries = entries;
+        this.pools = pools;
+        this.commands = commands;
+        this.cooldownScope = cooldownScope;
+        this.permissionGroup = permissionGroup;
+        this.cooldownMillis = cooldownMillis;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Compila la configuración de un cofre en una tabla de loot
+     * @param chestName Nombre del cofre
+     * @param chestSection Sección del cofre en lootchests.yml, puede ser null
+     * @param maxItems Número máximo de items por apertura
+     * @param baseChanceMultiplier Multiplicador global de probabilidad
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Tabla de loot compilada
+     */
+    public static LootTable compile(String chestName, ConfigurationSection chestSection, int maxItems,
+                                    double baseChanceMultiplier, Logger logger) {
+        List<Entry> entries = new ArrayList<>();
+        List<LootPool> pools = new ArrayList<>();
+        List<RewardCommand> commands = new ArrayList<>();
+        CooldownScope cooldownScope = CooldownScope.PLAYER;
+        boolean permissionGroup = false;
+        long cooldownMillis = 0L;
+
+        if (chestSection != null) {
+            for (Map<?, ?> itemMap : chestSection.getMapList("items")) {
+                ItemStack prototype = createPrototype(chestName, itemMap, logger);
+                if (prototype == null) {
+                    continue;
+                }
+
+                double chance = itemMap.get("chance") instanceof Number ? ((Number) itemMap.get("chance")).doubleValue() : 100.0;
+                entries.add(new Entry(prototype, chance * baseChanceMultiplier));
+            }
+
+            for (Map<?, ?> poolMap : chestSection.getMapList("pools")) {
+                LootPool pool = LootPool.compile(chestName, poolMap, logger);
+                if (pool != null) {
+                    pools.add(pool);
+                }
+            }
+
+            cooldownScope = CooldownScope.fromConfig(chestSection.getString("cooldown-scope"));
+            permissionGroup = CooldownScope.isPermissionGroupSource(chestSection.getString("cooldown-group", "team"));
+            cooldownMillis = chestSection.getInt("cooldown") * 1000L;
+
+            // Los comandos se ejecutan como consola, así que solo resuelven los placeholders internos y
+            // nunca los de PlaceholderAPI. El comando único de versiones anteriores va antes que la lista commands
+            String command = chestSection.getString("command");
+            if (command != null && !command.isEmpty()) {
+                commands.add(new RewardCommand(MessageTemplate.compile(command, false), 100.0,
+                        chestSection.getBoolean("command-immediate", false)));
+            }
+            for (Map<?, ?> commandMap : chestSection.getMapList("commands")) {
+                if (!(commandMap.get("command") instanceof String)) {
+                    logger.warning("Comando inválido en la configuración del cofre " + chestName + ": " + commandMap.get("command"));
+                    continue;
+                }
+                double chance = commandMap.get("chance") instanceof Number ? ((Number) commandMap.get("chance")).doubleValue() : 100.0;
+                commands.add(new RewardCommand(MessageTemplate.compile((String) commandMap.get("command"), false),
+                        chance, Boolean.TRUE.equals(commandMap.get("immediate"))));
+            }
+        }
+
+        return new LootTable(chestName, Collections.unmodifiableList(entries), Collections.unmodifiableList(pools),
+                Collections.unmodifiableList(commands), cooldownScope, permissionGroup, cooldownMillis, maxItems);
+    }
+
+    /**
+     * Construye el item prototipo de una entrada de la configuración
+     * @param chestName Nombre del cofre (para los mensajes de error)
+     * @param itemMap Mapa con las propiedades del item
+     * @param logger Logger donde se informan las entradas inválidas
+     * @return Item prototipo, o null si el material no es válido
+     */
+    static ItemStack createPrototype(String chestName, Map<?, ?> itemMap, Logger logger) {
+        Object materialName = itemMap.get("material");
+        Material material = materialName instanceof String ? Material.matchMaterial((String) materialName) : null;
+        if (material == null) {
+            logger.warning("Material inválido en la configuración del cofre " + chestName + ": " + materialName);
+            return null;
+        }
+
+        int amount = itemMap.get("amount") instanceof Integer ? (int) itemMap.get("amount") : 1;
+        ItemStack item = new ItemStack(material, amount);
+
+        // Aplicar encantamientos si existen
+        if (itemMap.get("enchantments") instanceof List) {
+            for (Object enchObj : (List<?>) itemMap.get("enchantments")) {
+                if (enchObj instanceof Map) {
+                    Map<?, ?> enchMap = (Map<?, ?>) enchObj;
+                    String enchType = String.valueOf(enchMap.get("type"));
+                    int level = enchMap.get("level") instanceof Integer ? (int) enchMap.get("level") : 1;
+
+                    @SuppressWarnings("deprecation")
+                    Enchantment enchantment = Enchantment.getByName(enchType);
+                    if (enchantment != null) {
+                        item.addUnsafeEnchantment(enchantment, level);
+                    } else {
+                        logger.warning("Encantamiento inválido en la configuración del cofre " + chestName + ": " + enchType);
+                    }
+                }
+            }
+        }
+
+        // Aplicar nombre y lore personalizados si existen
+        boolean hasName = itemMap.get("name") instanceof String;
+        List<String> lore = new ArrayList<>();
+        if (itemMap.get("lore") instanceof List) {
+            for (Object line : (List<?>) itemMap.get("lore")) {
+                if (line instanceof String) {
+                    lore.add((String) line);
+                }
+            }
+        }
+
+        if (hasName || !lore.isEmpty()) {
+            ItemMeta meta = item.getItemMeta();
+            if (meta != null) {
+                if (hasName) {
+                    meta.setDisplayName((String) itemMap.get("name"));
+                }
+                if (!lore.isEmpty()) {
+                    meta.setLore(lore);
+                }
+                item.setItemMeta(meta);
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Genera una tirada de loot clonando los prototipos que superan su probabilidad
+     * y los elegidos en cada grupo con pesos
+     * @param random Generador de números aleatorios
+     * @return Lista de items generados
+     */
+    public List<ItemStack> roll(RandomGenerator random) {
+        List<ItemStack> lootItems = new ArrayList<>();
+
+        for (Entry entry : entries) {
+            // Verificar si se alcanzó el máximo de items
+            if (lootItems.size() >= maxItems) {
+                break;
+            }
+
+            // Verificar si el item debe ser generado según su probabilidad
+            if (random.nextDouble() * 100 <= entry.chance) {
+                lootItems.add(entry.prototype.clone());
+            }
+        }
+
+        for (LootPool pool : pools) {
+            pool.roll(random, lootItems);
+        }
+
+        return lootItems;
+    }
+
+    /**
+     * Obtiene los comandos de recompensa del cofre, en el orden en que se ejecutan
+     * @return Lista inmutable de comandos compilados
+     */
+    public List<RewardCommand> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Obtiene el alcance del cooldown del cofre
+     * @return Alcance configurado en cooldown-scope
+     */
+    public CooldownScope getCooldownScope() {
+        return cooldownScope;
+    }
+
+    /**
+     * Obtiene la duración del cooldown del cofre
+     * @return Cooldown configurado en milisegundos
+     */
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    /**
+     * Indica si los grupos del cooldown salen de los permisos (cooldown-group: permission)
+     * @return true para los permisos, false para el equipo del scoreboard
+     */
+    public boolean isPermissionGroup() {
+        return permissionGroup;
+    }
+
+    /**
+     * Obtiene la clave con la que se guarda el cooldown de un jugador en este cofre.
+     * Con alcance de grupo debe llamarse desde el hilo principal.
+     * @param player Jugador que abre el cofre
+     * @return Clave del almacén de cooldowns
+     */
+    public UUID resolveCooldownKey(Player player) {
+        return cooldownScope.resolveKey(player, permissionGroup);
+    }
+
+    /**
+     * Obtiene el nombre del cofre de esta tabla
+     * @return Nombre del cofre
+     */
+    public String getChestName() {
+        return chestName;
+    }
+
+    /**
+     * Indica si la tabla no tiene ninguna entrada ni grupo válido
+     * @return true si la tabla está vacía
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty() && pools.isEmpty();
+    }
+
+    /**
+     * Entrada compilada: item prototipo y probabilidad con el multiplicador global aplicado
+     */
+    private static final class Entry {
+
+        private final ItemStack prototype;
+        private final double chance;
+
+        private Entry(ItemStack prototype, double chance) {
+            this.prototype = prototype;
+            this.chance = chance;
+        }
+    }
+
+    /**
+     * Comando de recompensa compilado: plantilla, probabilidad y si pide ejecución inmediata
+     */
+    public static final class RewardCommand {
+
+        private final MessageTemplate template;
+        private final double chance;
+        private final boolean immediate;
+
+        private RewardCommand(MessageTemplate template, double chance, boolean immediate) {
+            this.template = template;
+            this.chance = chance;
+            this.immediate = immediate;
+        }
+
+        /**
+         * Obtiene la plantilla del comando
+         * @return Plantilla compilada
+         */
+        public MessageTemplate getTemplate() {
+            return template;
+        }
+
+        /**
+         * Obtiene la probabilidad de ejecutar el comando
+         * @return Probabilidad entre 0 y 100
+         */
+        public double getChance() {
+            return chance;
+        }
+
+        /**
+         * Indica si el comando pide ejecutarse en el mismo clic
+         * @return true si no debe pasar por la cola
+         */
+        public boolean isImmediate() {
+            return immediate;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.virtha;
+
+import me.clip.placeholderapi.PlaceholderAPI;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla de un comando o mensaje configurado, compilada una sola vez al cargar la
+ * configuración en segmentos de texto literal y placeholders internos (%player_name%, %chest%,
+ * %time_left% y %items%). Al usarla solo se concatenan los segmentos en un StringBuilder
+ * reutilizado por hilo, sin expresiones regulares ni cadenas intermedias. PlaceholderAPI solo
+ * se llama si la plantilla contiene otros placeholders y estaba instalado al compilarla.
+ */
+public final class MessageTemplate {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    // Texto original, devuelto tal cual si no hay placeholders internos
+    private final String source;
+    private final Segment[] segments;
+    private final boolean constant;
+    private final boolean external;
+
+    private MessageTemplate(String source, Segment[] segments, boolean constant, boolean external) {
+        this.source = source;
+        this.segments = segments;
+        this.constant = constant;
+        this.external = external;
+    }
+
+    /**
+     * Compila un texto en una plantilla
+     * @param text Texto configurado, con los colores ya traducidos; null equivale a vacío
+     * @param placeholderApiEnabled Si PlaceholderAPI está instalado
+     * @return Plantilla compilada
+     */
+    public static MessageTemplate compile(String text, boolean placeholderApiEnabled) {
+        if (text == null) {
+            text = "";
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        boolean constant = true;
+        boolean external = false;
+        int literalStart = 0;
+        int start = text.indexOf('%');
+        while (start >= 0) {
+            int end = text.indexOf('%', start + 1);
+            if (end < 0) {
+                break;
+            }
+
+            String name = text.substring(start + 1, end);
+            Placeholder placeholder = Placeholder.byName(name);
+            if (placeholder != null) {
+                if (start > literalStart) {
+                    segments.add(new Segment(text.substring(literalStart, start), null));
+                }
+                segments.add(new Segment(null, placeholder));
+                constant = false;
+                literalStart = end + 1;
+                start = text.indexOf('%', literalStart);
+            } else if (isExternalName(name)) {
+                // Se deja en el texto literal para que lo resuelva PlaceholderAPI
+                external = true;
+                start = text.indexOf('%', end + 1);
+            } else {
+                // Un % suelto (por ejemplo "50%"): el segundo puede abrir un placeholder
+                start = end;
+            }
+        }
+        if (literalStart < text.length()) {
+            segments.add(new Segment(text.substring(literalStart), null));
+        }
+
+        return new MessageTemplate(text, segments.toArray(new Segment[0]), constant, external && placeholderApiEnabled);
+    }
+
+    /**
+     * Comprueba si un nombre entre % tiene la forma de un placeholder de PlaceholderAPI
+     * (identificador_parámetros, sin espacios)
+     */
+    private static boolean isExternalName(String name) {
+        if (name.indexOf('_') <= 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isWhitespace(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Genera el texto final de la plantilla para un jugador
+     * @param player Jugador para %player_name% y PlaceholderAPI
+     * @param chestName Nombre del contenedor para %chest%, puede ser null
+     * @param timeLeft Segundos restantes para %time_left%
+     * @param items Número de items para %items%
+     * @return Texto con los placeholders sustituidos
+     */
+    public String render(Player player, String chestName, long timeLeft, int items) {
+        String result;
+        if (constant) {
+            result = source;
+        } else {
+            StringBuilder out = BUFFER.get();
+            out.setLength(0);
+            appendTo(out, player, chestName, timeLeft, items);
+            result = out.toString();
+        }
+        return external ? PlaceholderAPI.setPlaceholders(player, result) : result;
+    }
+
+    /**
+     * Añade la plantilla al final de un StringBuilder sustituyendo solo los placeholders internos
+     * @param out Destino del texto
+     * @param player Jugador para %player_name%
+     * @param chestName Nombre del contenedor para %chest%, puede ser null
+     * @param timeLeft Segundos restantes para %time_left%
+     * @param items Número de items para %items%
+     */
+    public void appendTo(StringBuilder out, Player player, String chestName, long timeLeft, int items) {
+        for (Segment segment : segments) {
+            if (segment.literal != null) {
+                out.append(segment.literal);
+                continue;
+            }
+            switch (segment.placeholder) {
+                case PLAYER_NAME:
+                    out.append(player.getName());
+                    break;
+                case CHEST:
+                    out.append(chestName != null ? chestName : "");
+                    break;
+                case TIME_LEFT:
+                    out.append(timeLeft);
+                    break;
+                case ITEMS:
+                    out.append(items);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Placeholders que resuelve el propio plugin
+     */
+    private enum Placeholder {
+        PLAYER_NAME("player_name"),
+        CHEST("chest"),
+        TIME_LEFT("time_left"),
+        ITEMS("items");
+
+        private final String name;
+
+        Placeholder(String name) {
+            this.name = name;
+        }
+
+        private static Placeholder byName(String name) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.name.equals(name)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Segmento de la plantilla: texto literal o placeholder interno
+     */
+    private static final class Segment {
+
+        private final String literal;
+        private final Placeholder placeholder;
+
+        private Segment(String literal, Placeholder placeholder) {
+            this.literal = literal;
+            this.placeholder = placeholder;
+        }
+    }
+}
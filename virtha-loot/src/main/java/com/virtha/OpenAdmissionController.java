@@ -0,0 +1,223 @@
+package com.virtha;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Control de admisión de las aperturas de cofres. Mide el tiempo de hilo principal que cuesta
+ * cada apertura (generar y entregar el loot, sonido y comandos) y limita las que se procesan en
+ * cada tick por número y por tiempo. Las que no caben se aplazan a los ticks siguientes en orden
+ * de llegada y el jugador ve un aviso en la barra de acción, en lugar de rechazarlas. Así un
+ * evento con cientos de jugadores abriendo cofres a la vez reparte el trabajo entre varios ticks.
+ *
+ * El cooldown se reclama al hacer clic, antes de pasar por aquí; si el jugador se desconecta
+ * antes de procesar su apertura, se libera. Todo se usa desde el hilo principal.
+ */
+public class OpenAdmissionController {
+
+    private final VirthaLootPlugin plugin;
+    private boolean enabled;
+    private int maxOpensPerTick;
+    private long budgetNanos;
+
+    private final ArrayDeque<PendingOpen> queue = new ArrayDeque<>();
+    private BukkitTask tickTask;
+
+    // Trabajo hecho en el tick actual
+    private int opensThisTick;
+    private long usedNanosThisTick;
+    // Media móvil del coste de una apertura, para prever si la siguiente cabe en el tick
+    private long averageCostNanos;
+
+    // Métricas
+    private long immediateCount;
+    private long deferredCount;
+    private long deferredProcessed;
+    private long totalDeferredWaitNanos;
+    private long maxDeferredWaitNanos;
+    private int maxQueueDepth;
+
+    /**
+     * Constructor del control de admisión a partir de la sección admission de config.yml
+     * @param plugin Instancia del plugin principal
+     * @param config Sección admission, puede ser null
+     */
+    public OpenAdmissionController(VirthaLootPlugin plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+        configure(config);
+    }
+
+    /**
+     * Aplica la sección admission de config.yml; las aperturas ya aplazadas siguen en la cola
+     * y se procesan con los nuevos límites
+     * @param config Sección admission, puede ser null
+     */
+    public void configure(ConfigurationSection config) {
+        this.enabled = config == null || config.getBoolean("enabled", true);
+        this.maxOpensPerTick = Math.max(1, config != null ? config.getInt("max-opens-per-tick", 10) : 10);
+        this.budgetNanos = Math.max(1L, config != null ? config.getLong("max-millis-per-tick", 10L) : 10L) * 1_000_000L;
+    }
+
+    /**
+     * Empieza a procesar las aperturas aplazadas en cada tick
+     */
+    public void start() {
+        tickTask = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Procesa todas las aperturas pendientes, ya que sus cooldowns están reclamados
+     */
+    public void shutdown() {
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+        PendingOpen open;
+        while ((open = queue.poll()) != null) {
+            run(open);
+        }
+    }
+
+    /**
+     * Procesa una apertura ahora si cabe en el presupuesto del tick, o la aplaza
+     * @param player Jugador que abre el cofre
+     * @param open Trabajo de la apertura, recibe el jugador al procesarla
+     * @param release Acción que libera el cooldown reclamado si la apertura no se llega a procesar
+     */
+    public void submit(Player player, Consumer<Player> open, Runnable release) {
+        PendingOpen pending = new PendingOpen(player.getUniqueId(), open, release, System.nanoTime());
+        // Si hay aperturas en cola, esta va detrás para respetar el orden de llegada
+        if (!enabled || (queue.isEmpty() && hasBudget())) {
+            immediateCount++;
+            run(pending);
+            return;
+        }
+
+        queue.add(pending);
+        deferredCount++;
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        player.spigot().sendMessage(ChatMessageType.ACTION_BAR,
+                TextComponent.fromLegacyText("§eCofre en cola (posición " + queue.size() + "), recibirás el loot en un momento..."));
+    }
+
+    private boolean hasBudget() {
+        return opensThisTick < maxOpensPerTick && usedNanosThisTick + averageCostNanos <= budgetNanos;
+    }
+
+    private void tick() {
+        opensThisTick = 0;
+        usedNanosThisTick = 0;
+
+        // Al menos una apertura por tick, para que la cola siempre avance
+        while (!queue.isEmpty() && (opensThisTick == 0 || hasBudget())) {
+            PendingOpen pending = queue.poll();
+            long wait = System.nanoTime() - pending.submittedAt;
+            deferredProcessed++;
+            totalDeferredWaitNanos += wait;
+            maxDeferredWaitNanos = Math.max(maxDeferredWaitNanos, wait);
+            run(pending);
+        }
+    }
+
+    private void run(PendingOpen pending) {
+        Player player = Bukkit.getPlayer(pending.playerId);
+        if (player == null) {
+            // El jugador se desconectó antes de recibir el loot: no debe perder el cofre
+            pending.release.run();
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            pending.open.accept(player);
+        } finally {
+            long cost = System.nanoTime() - start;
+            opensThisTick++;
+            usedNanosThisTick += cost;
+            averageCostNanos = averageCostNanos == 0 ? cost : averageCostNanos + (cost - averageCostNanos) / 8;
+        }
+    }
+
+    /**
+     * Obtiene el número de aperturas aplazadas que esperan en la cola
+     * @return Aperturas pendientes
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Obtiene el mayor número de aperturas que ha llegado a tener la cola
+     * @return Profundidad máxima de la cola
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Obtiene el número de aperturas procesadas en el mismo clic
+     * @return Aperturas inmediatas desde el inicio
+     */
+    public long getImmediateCount() {
+        return immediateCount;
+    }
+
+    /**
+     * Obtiene el número de aperturas aplazadas a ticks posteriores
+     * @return Aperturas aplazadas desde el inicio
+     */
+    public long getDeferredCount() {
+        return deferredCount;
+    }
+
+    /**
+     * Obtiene la espera media de las aperturas aplazadas
+     * @return Espera media en milisegundos
+     */
+    public double getAverageDeferredWaitMillis() {
+        return deferredProcessed == 0 ? 0.0 : totalDeferredWaitNanos / (double) deferredProcessed / 1_000_000.0;
+    }
+
+    /**
+     * Obtiene la mayor espera de una apertura aplazada
+     * @return Espera máxima en milisegundos
+     */
+    public double getMaxDeferredWaitMillis() {
+        return maxDeferredWaitNanos / 1_000_000.0;
+    }
+
+    /**
+     * Obtiene el coste medio reciente de una apertura en el hilo principal
+     * @return Coste medio en milisegundos
+     */
+    public double getAverageOpenCostMillis() {
+        return averageCostNanos / 1_000_000.0;
+    }
+
+    /**
+     * Apertura reclamada pendiente de procesar
+     */
+    private static final class PendingOpen {
+
+        private final UUID playerId;
+        private final Consumer<Player> open;
+        private final Runnable release;
+        private final long submittedAt;
+
+        private PendingOpen(UUID playerId, Consumer<Player> open, Runnable release, long submittedAt) {
+            this.playerId = playerId;
+            this.open = open;
+            this.release = release;
+            this.submittedAt = submittedAt;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32C;
+
+/**
+ * Almacenamiento de cooldowns por jugador (storage.mode: player).
+ * Cada jugador tiene su propio archivo en players/, que se carga de forma asíncrona al
+ * conectarse y se guarda y descarga de memoria al salir. Así la memoria depende de los
+ * jugadores conectados y no de todos los que han abierto alguna vez un cofre. Los cooldowns que
+ * llegan para un jugador desconectado se añaden a su archivo en el siguiente guardado.
+ *
+ * Todas las lecturas y escrituras pasan por un único hilo, de modo que una reconexión
+ * rápida siempre lee el archivo después de que se haya guardado la salida anterior. Si el
+ * jugador vuelve a entrar antes de que se procese su salida, se cuentan las sesiones y los
+ * cooldowns solo se descargan al cerrar la última.
+ *
+ * Formato del archivo: "VLCP", versión (int), número de entradas (int), cada entrada con
+ * longitud (short) y nombre del cofre en UTF-8 y expiración (long), y un CRC32C final.
+ */
+public class PlayerCooldownStorage implements CooldownRepository, CooldownStore.ChangeListener, Listener {
+
+    private static final int MAGIC = 0x564C4350; // "VLCP"
+    private static final int VERSION = 1;
+
+    private final VirthaLootPlugin plugin;
+    private final CooldownStore store;
+    private final File directory;
+    private final int flushIntervalSeconds;
+    private final ExecutorService ioExecutor;
+
+    // Jugadores cuyos cooldowns están en memoria y jugadores con cambios sin guardar
+    private final Set<UUID> loadedPlayers = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    // Sesiones abiertas de cada jugador: inicios de sesión admitidos menos salidas procesadas
+    private final Map<UUID, Integer> sessions = new ConcurrentHashMap<>();
+    private BukkitTask flushTask;
+
+    /**
+     * Constructor del almacenamiento por jugador
+     * @param plugin Instancia del plugin principal
+     * @param store Almacén de cooldowns
+     */
+    public PlayerCooldownStorage(VirthaLootPlugin plugin, CooldownStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.directory = new File(plugin.getDataFolder(), "players");
+        this.flushIntervalSeconds = Math.max(1, plugin.getConfig().getInt("storage.flush-interval", 30));
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VirthaLoot-Cooldowns");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Migra la instantánea global si hace falta, carga los jugadores ya conectados y programa
+     * el guardado periódico
+     */
+    @Override
+    public void start() {
+        migrateGlobalSnapshot();
+
+        store.addListener(this);
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+
+        // Claves compartidas (cofres globales o de grupo), que no dependen de ningún jugador conectado
+        for (UUID sharedKey : listSharedKeys()) {
+            awaitQuietly(ioExecutor.submit(() -> loadPlayer(sharedKey)));
+        }
+
+        // Jugadores conectados antes de habilitar el plugin (por ejemplo tras una recarga)
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            UUID playerId = player.getUniqueId();
+            sessions.merge(playerId, 1, Integer::sum);
+            awaitQuietly(ioExecutor.submit(() -> loadPlayer(playerId)));
+        }
+
+        long period = flushIntervalSeconds * 20L;
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,
+                () -> ioExecutor.execute(this::saveDirtyPlayers), period, period);
+    }
+
+    /**
+     * Detiene el guardado periódico y guarda todos los jugadores cargados antes de volver
+     */
+    @Override
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+
+        ioExecutor.execute(() -> {
+            for (UUID playerId : loadedPlayers) {
+                savePlayerQuietly(playerId);
+            }
+            dirtyPlayers.clear();
+        });
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().severe("El guardado de cooldowns por jugador no terminó a tiempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Carga los cooldowns del jugador antes de que entre al servidor.
+     * Se ejecuta en el hilo asíncrono de inicio de sesión, así que puede esperar a la lectura.
+     * @param event Evento de inicio de sesión
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        UUID playerId = event.getUniqueId();
+        // Se cuenta antes de encolar la carga, así una salida anterior aún pendiente no descarga esta sesión
+        sessions.merge(playerId, 1, Integer::sum);
+        awaitQuietly(ioExecutor.submit(() -> loadPlayer(playerId)));
+    }
+
+    /**
+     * Cierra la sesión de un jugador rechazado después de cargar sus cooldowns, ya que no
+     * llegará a lanzar el evento de salida
+     * @param event Evento de inicio de sesión
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            UUID playerId = event.getPlayer().getUniqueId();
+            ioExecutor.execute(() -> unloadPlayer(playerId));
+        }
+    }
+
+    /**
+     * Guarda y descarga de memoria los cooldowns del jugador que sale del servidor
+     * @param event Evento de salida del jugador
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID playerId = event.getPlayer().getUniqueId();
+        ioExecutor.execute(() -> unloadPlayer(playerId));
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Las eliminaciones no marcan cambios: al guardar se descartan las entradas expiradas
+        if (expiry > 0) {
+            UUID playerId = new UUID(playerMost, playerLeast);
+            // Las claves compartidas (cofres globales o de grupo) están siempre cargadas
+            if (CooldownScope.isSharedKey(playerMost)) {
+                loadedPlayers.add(playerId);
+            }
+            dirtyPlayers.add(playerId);
+        }
+    }
+
+    @Override
+    public void onReleased(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Se reescribe el archivo sin la reclamación liberada
+        dirtyPlayers.add(new UUID(playerMost, playerLeast));
+    }
+
+    @Override
+    public void onChestCleared(int chestId) {
+        dirtyPlayers.addAll(loadedPlayers);
+    }
+
+    @Override
+    public String getName() {
+        return "file (player, " + loadedPlayers.size() + " jugadores cargados)";
+    }
+
+    @Override
+    public int getPendingWrites() {
+        return dirtyPlayers.size();
+    }
+
+    private void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error al cargar los cooldowns de un jugador", e.getCause());
+        }
+    }
+
+    private void loadPlayer(UUID playerId) {
+        if (loadedPlayers.contains(playerId)) {
+            return;
+        }
+
+        readPlayerQuietly(playerId, store, System.currentTimeMillis());
+
+        // Lo recién leído no cuenta como cambio pendiente
+        dirtyPlayers.remove(playerId);
+        loadedPlayers.add(playerId);
+    }
+
+    private void readPlayerQuietly(UUID playerId, CooldownStore target, long now) {
+        File file = playerFile(playerId);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            readPlayer(file, playerId, target, now);
+        } catch (IOException e) {
+            // Se conserva el archivo dañado para poder revisarlo
+            plugin.getLogger().log(Level.SEVERE, "No se pudieron leer los cooldowns de " + playerId, e);
+            if (!file.renameTo(new File(directory, playerId + ".dat.corrupt"))) {
+                plugin.getLogger().warning("No se pudo renombrar " + file.getName());
+            }
+        }
+    }
+
+    private void unloadPlayer(UUID playerId) {
+        // Con otra sesión abierta (reconexión antes de procesar la salida) los cooldowns siguen en uso
+        if (sessions.computeIfPresent(playerId, (id, count) -> count > 1 ? count - 1 : null) != null) {
+            return;
+        }
+        if (!loadedPlayers.remove(playerId)) {
+            return;
+        }
+        dirtyPlayers.remove(playerId);
+        savePlayerQuietly(playerId);
+        store.removePlayer(playerId);
+    }
+
+    private void saveDirtyPlayers() {
+        for (UUID playerId : dirtyPlayers) {
+            // Se desmarca antes de guardar: un cambio posterior lo vuelve a marcar
+            dirtyPlayers.remove(playerId);
+            if (loadedPlayers.contains(playerId)) {
+                savePlayerQuietly(playerId);
+            } else {
+                mergeOfflinePlayer(playerId);
+            }
+        }
+    }
+
+    /**
+     * Añade al archivo de un jugador desconectado los cooldowns que le llegaron estando fuera
+     * (por ejemplo desde el clúster) y los descarga de memoria, ya que nadie más lo haría
+     */
+    private void mergeOfflinePlayer(UUID playerId) {
+        List<long[]> entries = new ArrayList<>();
+        store.forEachOfPlayer(playerId, (chestId, playerMost, playerLeast, expiry) -> entries.add(new long[] {chestId, expiry}));
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long playerMost = playerId.getMostSignificantBits();
+        long playerLeast = playerId.getLeastSignificantBits();
+        CooldownStore merged = new CooldownStore();
+        readPlayerQuietly(playerId, merged, now);
+        for (long[] entry : entries) {
+            merged.putIfLater(merged.chestId(store.getChestName((int) entry[0])), playerMost, playerLeast, entry[1]);
+        }
+
+        try {
+            writePlayer(merged, playerId, now);
+        } catch (IOException e) {
+            // Se mantienen en memoria y se reintenta en el próximo guardado
+            plugin.getLogger().log(Level.SEVERE, "No se pudieron guardar los cooldowns de " + playerId, e);
+            dirtyPlayers.add(playerId);
+            return;
+        }
+        for (long[] entry : entries) {
+            // Una expiración que cambió mientras tanto sigue en memoria y vuelve a marcar al jugador
+            store.evict((int) entry[0], playerMost, playerLeast, entry[1]);
+        }
+    }
+
+    private void savePlayerQuietly(UUID playerId) {
+        try {
+            writePlayer(store, playerId, System.currentTimeMillis());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudieron guardar los cooldowns de " + playerId, e);
+        }
+    }
+
+    private void readPlayer(File file, UUID playerId, CooldownStore target, long now) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (data.remaining() < 4 + 4 + 4 + 4) {
+            throw new IOException("Archivo demasiado corto");
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data.array(), 0, data.limit() - 4);
+        if ((int) crc.getValue() != data.getInt(data.limit() - 4)) {
+            throw new IOException("Suma de comprobación incorrecta");
+        }
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException("Formato de archivo desconocido");
+        }
+
+        int count = data.getInt();
+        long playerMost = playerId.getMostSignificantBits();
+        long playerLeast = playerId.getLeastSignificantBits();
+        for (int i = 0; i < count; i++) {
+            byte[] nameBytes = new byte[data.getShort() & 0xFFFF];
+            data.get(nameBytes);
+            long expiry = data.getLong();
+            if (expiry > now) {
+                // Sin pisar una expiración posterior que ya llegó, por ejemplo desde el clúster
+                target.putIfLater(target.chestId(new String(nameBytes, StandardCharsets.UTF_8)), playerMost, playerLeast, expiry);
+            }
+        }
+    }
+
+    private void writePlayer(CooldownStore source, UUID playerId, long now) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        List<Long> expiries = new ArrayList<>();
+        source.forEachOfPlayer(playerId, (chestId, playerMost, playerLeast, expiry) -> {
+            if (expiry > now) {
+                names.add(source.getChestName(chestId).getBytes(StandardCharsets.UTF_8));
+                expiries.add(expiry);
+            }
+        });
+
+        File file = playerFile(playerId);
+        if (names.isEmpty()) {
+            // Sin cooldowns activos no hace falta conservar el archivo
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+
+        int size = 4 + 4 + 4 + 4;
+        for (byte[] name : names) {
+            size += 2 + name.length + 8;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putInt(VERSION).putInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            data.putShort((short) names.get(i).length).put(names.get(i)).putLong(expiries.get(i));
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int) crc.getValue());
+        data.flip();
+
+        AtomicFiles.write(file, data);
+    }
+
+    /**
+     * Reparte los cooldowns del backend de archivos (cooldowns.dat o cooldowns.yml, más el diario)
+     * en archivos por jugador la primera vez que se usa este modo, y los renombra a *.migrated
+     */
+    private void migrateGlobalSnapshot() {
+        if (directory.exists()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        CooldownStore snapshot = new CooldownStore();
+        try {
+            if (!CooldownPersistence.readForMigration(plugin, snapshot, now)) {
+                return;
+            }
+            plugin.getLogger().info("Migrando los cooldowns globales a archivos por jugador...");
+
+            Set<UUID> players = new HashSet<>();
+            snapshot.forEach((chestId, playerMost, playerLeast, expiry) -> players.add(new UUID(playerMost, playerLeast)));
+            for (UUID playerId : players) {
+                writePlayer(snapshot, playerId, now);
+            }
+            // Sin cooldowns activos el directorio no llega a crearse y se volvería a migrar en cada arranque
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("No se pudo crear el directorio " + directory);
+            }
+
+            CooldownPersistence.markMigrated(plugin);
+            plugin.getLogger().info("Cooldowns migrados para " + players.size() + " jugadores");
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudieron migrar los cooldowns globales a archivos por jugador", e);
+        }
+    }
+
+    private List<UUID> listSharedKeys() {
+        List<UUID> keys = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (files == null) {
+            return keys;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                UUID key = UUID.fromString(name.substring(0, name.length() - ".dat".length()));
+                if (CooldownScope.isSharedKey(key.getMostSignificantBits())) {
+                    keys.add(key);
+                }
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Archivo desconocido en players/: " + name);
+            }
+        }
+        return keys;
+    }
+
+    private File playerFile(UUID playerId) {
+        return new File(directory, playerId + ".dat");
+    }
+}
@@ -0,0 +1,138 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claves de grupo de los jugadores conectados, para resolver los cooldowns con alcance de grupo
+ * fuera del hilo principal. El equipo del scoreboard y los permisos solo se consultan de forma
+ * segura desde el hilo principal, pero PlaceholderAPI evalúa los placeholders en hilos
+ * asíncronos. Las claves se calculan al entrar el jugador y se renuevan cada segundo en el hilo
+ * principal, solo para los orígenes de grupo que usa algún cofre; los demás hilos solo leen.
+ */
+public class PlayerGroupCache implements Listener {
+
+    private static final long REFRESH_PERIOD_TICKS = 20L;
+
+    private final VirthaLootPlugin plugin;
+    private final Map<UUID, GroupKeys> groups = new ConcurrentHashMap<>();
+    private BukkitTask refreshTask;
+
+    /**
+     * Constructor de la caché de grupos
+     * @param plugin Instancia del plugin principal
+     */
+    public PlayerGroupCache(VirthaLootPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Calcula los grupos de los jugadores conectados y programa su renovación
+     */
+    public void start() {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        refresh();
+        refreshTask = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, REFRESH_PERIOD_TICKS, REFRESH_PERIOD_TICKS);
+    }
+
+    /**
+     * Detiene la renovación y vacía la caché
+     */
+    public void shutdown() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+        groups.clear();
+    }
+
+    /**
+     * Calcula los grupos del jugador al entrar, para no esperar a la siguiente renovación
+     * @param event Evento de entrada del jugador
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        LootSnapshot snapshot = plugin.getSnapshot();
+        refresh(event.getPlayer(), usesGroupSource(snapshot, false), usesGroupSource(snapshot, true));
+    }
+
+    /**
+     * Olvida los grupos del jugador que sale del servidor
+     * @param event Evento de salida del jugador
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        groups.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Obtiene la última clave de grupo calculada para un jugador. Se puede llamar desde cualquier hilo.
+     * @param playerId UUID del jugador
+     * @param permissionGroup Si el grupo sale de los permisos en lugar del equipo del scoreboard
+     * @return Clave del grupo, o null si el jugador no pertenece a ninguno o aún no se ha calculado
+     */
+    public UUID getGroupKey(UUID playerId, boolean permissionGroup) {
+        GroupKeys keys = groups.get(playerId);
+        if (keys == null) {
+            return null;
+        }
+        return permissionGroup ? keys.permissionKey : keys.teamKey;
+    }
+
+    private void refresh() {
+        LootSnapshot snapshot = plugin.getSnapshot();
+        boolean teams = usesGroupSource(snapshot, false);
+        boolean permissions = usesGroupSource(snapshot, true);
+        if (!teams && !permissions) {
+            groups.clear();
+            return;
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            refresh(player, teams, permissions);
+        }
+    }
+
+    private void refresh(Player player, boolean teams, boolean permissions) {
+        if (!teams && !permissions) {
+            return;
+        }
+        groups.put(player.getUniqueId(), new GroupKeys(
+                teams ? CooldownScope.findGroupKey(player, false) : null,
+                permissions ? CooldownScope.findGroupKey(player, true) : null));
+    }
+
+    private static boolean usesGroupSource(LootSnapshot snapshot, boolean permissionGroup) {
+        for (String chestName : snapshot.getSharedScopeChests()) {
+            LootTable lootTable = snapshot.getLootTables().get(chestName);
+            if (lootTable != null && lootTable.getCooldownScope() == CooldownScope.GROUP
+                    && lootTable.isPermissionGroup() == permissionGroup) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Claves de grupo de un jugador según cada origen
+     */
+    private static final class GroupKeys {
+
+        private final UUID teamKey;
+        private final UUID permissionKey;
+
+        private GroupKeys(UUID teamKey, UUID permissionKey) {
+            this.teamKey = teamKey;
+            this.permissionKey = permissionKey;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.virtha;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Servicio de números aleatorios compartido por la generación de loot y los comandos de recompensa.
+ * Cada hilo obtiene su propio SplittableRandom derivado de uno raíz, así que no hay contención
+ * entre hilos. Con una semilla fija las tiradas son reproducibles.
+ */
+public final class RandomService {
+
+    private final SplittableRandom root;
+    private final ThreadLocal<SplittableRandom> perThread;
+    private final boolean deterministic;
+    private final long seed;
+
+    /**
+     * Constructor del servicio
+     * @param deterministic true para usar la semilla indicada
+     * @param seed Semilla del generador raíz en modo determinista
+     */
+    public RandomService(boolean deterministic, long seed) {
+        this.deterministic = deterministic;
+        this.seed = seed;
+        this.root = deterministic ? new SplittableRandom(seed) : new SplittableRandom();
+        this.perThread = ThreadLocal.withInitial(this::split);
+    }
+
+    /**
+     * Crea el servicio a partir de la sección "random" de config.yml
+     * @param section Sección de configuración, puede ser null
+     * @return Servicio configurado
+     */
+    public static RandomService fromConfig(ConfigurationSection section) {
+        if (section == null) {
+            return new RandomService(false, 0L);
+        }
+        return new RandomService(section.getBoolean("deterministic", false), section.getLong("seed", 0L));
+    }
+
+    private SplittableRandom split() {
+        // split() no es seguro entre hilos, el raíz solo se usa aquí
+        synchronized (root) {
+            return root.split();
+        }
+    }
+
+    /**
+     * Obtiene el generador del hilo actual
+     * @return Generador de números aleatorios exclusivo del hilo
+     */
+    public RandomGenerator current() {
+        return perThread.get();
+    }
+
+    /**
+     * Indica si el servicio usa una semilla fija
+     * @return true si las tiradas son reproducibles
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Obtiene la semilla configurada
+     * @return Semilla del generador raíz
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,193 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Cola de los comandos de recompensa de los contenedores.
+ * En lugar de ejecutar todos los comandos dentro del clic, se encolan y el hilo principal los
+ * ejecuta en cada tick hasta agotar un presupuesto de comandos o de tiempo, de modo que una
+ * oleada de aperturas no dispara la duración del tick. La cola es única, así que los comandos
+ * de cada jugador se ejecutan en el orden en que se obtuvieron.
+ *
+ * Un comando puede pedir ejecución inmediata; si el jugador todavía tiene comandos en la cola,
+ * se encola detrás de ellos para no alterar el orden. Todo se usa desde el hilo principal.
+ */
+public class RewardCommandDispatcher {
+
+    private final VirthaLootPlugin plugin;
+    private boolean immediateMode;
+    private int maxCommandsPerTick;
+    private long maxNanosPerTick;
+
+    private final ArrayDeque<QueuedCommand> queue = new ArrayDeque<>();
+    // Comandos encolados de cada jugador, para respetar el orden de los inmediatos
+    private final Map<UUID, Integer> pendingByPlayer = new HashMap<>();
+    private BukkitTask drainTask;
+
+    // Métricas
+    private long executedCount;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private int maxQueueDepth;
+
+    /**
+     * Constructor del despachador a partir de la sección rewards de config.yml
+     * @param plugin Instancia del plugin principal
+     * @param config Sección rewards, puede ser null
+     */
+    public RewardCommandDispatcher(VirthaLootPlugin plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+        configure(config);
+    }
+
+    /**
+     * Aplica la sección rewards de config.yml; los comandos ya encolados se conservan
+     * @param config Sección rewards, puede ser null
+     */
+    public void configure(ConfigurationSection config) {
+        this.immediateMode = config != null && config.getBoolean("immediate", false);
+        this.maxCommandsPerTick = Math.max(1, config != null ? config.getInt("max-commands-per-tick", 20) : 20);
+        this.maxNanosPerTick = Math.max(1L, config != null ? config.getLong("max-millis-per-tick", 5L) : 5L) * 1_000_000L;
+    }
+
+    /**
+     * Empieza a vaciar la cola en cada tick
+     */
+    public void start() {
+        drainTask = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    /**
+     * Ejecuta todos los comandos pendientes, para no perder recompensas al desactivar el plugin
+     */
+    public void shutdown() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        QueuedCommand command;
+        while ((command = poll()) != null) {
+            execute(command);
+        }
+    }
+
+    /**
+     * Ejecuta o encola un comando de recompensa como consola
+     * @param player Jugador que recibe la recompensa
+     * @param command Comando ya preparado para ese jugador
+     * @param immediate Si el comando pide ejecutarse en el mismo clic
+     */
+    public void dispatch(Player player, String command, boolean immediate) {
+        UUID playerId = player.getUniqueId();
+        QueuedCommand queued = new QueuedCommand(playerId, command, System.nanoTime());
+        if ((immediate || immediateMode) && !pendingByPlayer.containsKey(playerId)) {
+            execute(queued);
+            return;
+        }
+
+        queue.add(queued);
+        pendingByPlayer.merge(playerId, 1, Integer::sum);
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        int executed = 0;
+        QueuedCommand command;
+        // Al menos un comando por tick, para que la cola siempre avance
+        while ((command = poll()) != null) {
+            execute(command);
+            executed++;
+            if (executed >= maxCommandsPerTick || System.nanoTime() - start >= maxNanosPerTick) {
+                return;
+            }
+        }
+    }
+
+    private QueuedCommand poll() {
+        QueuedCommand command = queue.poll();
+        if (command != null) {
+            pendingByPlayer.computeIfPresent(command.playerId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+        return command;
+    }
+
+    private void execute(QueuedCommand command) {
+        long latency = System.nanoTime() - command.enqueuedAt;
+        executedCount++;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+
+        try {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.command);
+        } catch (RuntimeException e) {
+            // Un comando de otro plugin que falla no debe bloquear el resto de la cola
+            plugin.getLogger().log(Level.WARNING, "Error al ejecutar el comando de recompensa: " + command.command, e);
+        }
+    }
+
+    /**
+     * Obtiene el número de comandos en la cola
+     * @return Comandos pendientes
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Obtiene el mayor número de comandos que ha llegado a tener la cola
+     * @return Profundidad máxima de la cola
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Obtiene el número de comandos ejecutados
+     * @return Comandos ejecutados desde el inicio
+     */
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * Obtiene la espera media entre que se obtiene un comando y se ejecuta
+     * @return Latencia media en milisegundos
+     */
+    public double getAverageLatencyMillis() {
+        return executedCount == 0 ? 0.0 : totalLatencyNanos / (double) executedCount / 1_000_000.0;
+    }
+
+    /**
+     * Obtiene la mayor espera entre que se obtiene un comando y se ejecuta
+     * @return Latencia máxima en milisegundos
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1_000_000.0;
+    }
+
+    /**
+     * Comando pendiente de ejecutar
+     */
+    private static final class QueuedCommand {
+
+        private final UUID playerId;
+        private final String command;
+        private final long enqueuedAt;
+
+        private QueuedCommand(UUID playerId, String command, long enqueuedAt) {
+            this.playerId = playerId;
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
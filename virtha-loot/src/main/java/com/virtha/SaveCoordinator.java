@@ -0,0 +1,231 @@
+package com.virtha;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Coordinador de los guardados de los archivos de configuración de los contenedores.
+ * Las peticiones de guardado que llegan dentro de la ventana de agrupación se escriben juntas,
+ * una sola vez por archivo. En el hilo principal solo se copia el árbol de la configuración
+ * (mapas, listas y comentarios); el YAML se genera y se escribe en un hilo asíncrono con
+ * AtomicFiles, así que un archivo grande no bloquea el tick ni queda a medio escribir.
+ *
+ * Las escrituras pasan por un único hilo, de modo que siempre se aplican en el orden en que
+ * se pidieron. Si una escritura falla se avisa a los jugadores que pidieron ese guardado; los
+ * cambios siguen en memoria y se vuelven a escribir con el siguiente guardado.
+ */
+public class SaveCoordinator {
+
+    private final VirthaLootPlugin plugin;
+    private final long delayTicks;
+    private final ExecutorService ioExecutor;
+
+    // Archivo -> guardado pendiente, solo se usa desde el hilo principal
+    private final Map<File, PendingSave> pending = new LinkedHashMap<>();
+    private BukkitTask flushTask;
+
+    /**
+     * Constructor del coordinador de guardados
+     * @param plugin Instancia del plugin principal
+     * @param delayTicks Ticks que se esperan para agrupar las peticiones de guardado
+     */
+    public SaveCoordinator(VirthaLootPlugin plugin, long delayTicks) {
+        this.plugin = plugin;
+        this.delayTicks = Math.max(1L, delayTicks);
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VirthaLoot-Config");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Pide guardar una configuración en su archivo. Debe llamarse desde el hilo principal.
+     * @param file Archivo destino
+     * @param config Configuración o sección que se guardará; se copia al terminar la ventana de agrupación
+     * @param requester Jugador al que se avisará si el guardado falla, o null si no hay ninguno
+     */
+    public void requestSave(File file, ConfigurationSection config, Player requester) {
+        schedule(file, requester).config = config;
+    }
+
+    /**
+     * Pide borrar un archivo, en orden con el resto de guardados. Debe llamarse desde el hilo principal.
+     * @param file Archivo a borrar
+     * @param requester Jugador al que se avisará si el borrado falla, o null si no hay ninguno
+     */
+    public void requestDelete(File file, Player requester) {
+        schedule(file, requester).config = null;
+    }
+
+    private PendingSave schedule(File file, Player requester) {
+        PendingSave save = pending.computeIfAbsent(file, key -> new PendingSave());
+        if (requester != null) {
+            save.requesters.add(requester.getUniqueId());
+        }
+
+        if (flushTask == null) {
+            flushTask = Bukkit.getScheduler().runTaskLater(plugin, this::flush, delayTicks);
+        }
+        return save;
+    }
+
+    /**
+     * Escribe ya los guardados pendientes y ejecuta una tarea en el hilo de escritura cuando
+     * terminen, para leer los archivos con todos los cambios aplicados. Debe llamarse desde el hilo principal.
+     * @param task Tarea que se ejecutará de forma asíncrona
+     */
+    public void runAfterWrites(Runnable task) {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+        flush();
+        ioExecutor.execute(task);
+    }
+
+    /**
+     * Comprueba si un archivo tiene un guardado pendiente que todavía no se ha escrito
+     * @param file Archivo a comprobar
+     * @return true si hay un guardado o borrado pendiente
+     */
+    public boolean isPending(File file) {
+        return pending.containsKey(file);
+    }
+
+    /**
+     * Obtiene el número de archivos con cambios pendientes de guardar
+     * @return Archivos pendientes
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void flush() {
+        flushTask = null;
+        for (Map.Entry<File, PendingSave> entry : pending.entrySet()) {
+            File file = entry.getKey();
+            PendingSave save = entry.getValue();
+            Snapshot snapshot = save.config != null ? Snapshot.of(save.config) : null;
+            Set<UUID> requesters = save.requesters;
+            ioExecutor.execute(() -> write(file, snapshot, requesters));
+        }
+        pending.clear();
+    }
+
+    private void write(File file, Snapshot snapshot, Set<UUID> requesters) {
+        try {
+            if (snapshot != null) {
+                AtomicFiles.write(file, snapshot.toYaml().getBytes(StandardCharsets.UTF_8));
+            } else {
+                Files.deleteIfExists(file.toPath());
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo guardar el archivo " + file.getName(), e);
+            if (!requesters.isEmpty() && plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    for (UUID requesterId : requesters) {
+                        Player player = Bukkit.getPlayer(requesterId);
+                        if (player != null) {
+                            player.sendMessage("§cNo se pudo guardar " + file.getName()
+                                    + ". Los cambios siguen en memoria; revisa la consola.");
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Escribe los guardados pendientes y espera a que terminen las escrituras en curso.
+     * Se usa al desactivar el plugin, cuando ya no se pueden programar tareas.
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().severe("El guardado de la configuración de los contenedores no terminó a tiempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Guardado pendiente de un archivo
+     */
+    private static final class PendingSave {
+
+        // null si el archivo se debe borrar
+        private ConfigurationSection config;
+        private final Set<UUID> requesters = new HashSet<>();
+    }
+
+    /**
+     * Copia de una configuración que se puede convertir a YAML desde otro hilo
+     */
+    private static final class Snapshot {
+
+        private final Map<String, Object> values = new LinkedHashMap<>();
+        private final Map<String, List<String>> comments = new LinkedHashMap<>();
+        private final Map<String, List<String>> inlineComments = new LinkedHashMap<>();
+        private List<String> header = new ArrayList<>();
+        private List<String> footer = new ArrayList<>();
+
+        private static Snapshot of(ConfigurationSection config) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.values.putAll(ConfigTrees.toMap(config));
+            for (String path : config.getKeys(true)) {
+                List<String> pathComments = config.getComments(path);
+                if (!pathComments.isEmpty()) {
+                    snapshot.comments.put(path, new ArrayList<>(pathComments));
+                }
+                List<String> pathInlineComments = config.getInlineComments(path);
+                if (!pathInlineComments.isEmpty()) {
+                    snapshot.inlineComments.put(path, new ArrayList<>(pathInlineComments));
+                }
+            }
+            if (config instanceof FileConfiguration) {
+                FileConfiguration file = (FileConfiguration) config;
+                snapshot.header = new ArrayList<>(file.options().getHeader());
+                snapshot.footer = new ArrayList<>(file.options().getFooter());
+            }
+            return snapshot;
+        }
+
+        private String toYaml() {
+            YamlConfiguration yaml = new YamlConfiguration();
+            // Se recrean las secciones para poder restaurar sus comentarios
+            ConfigTrees.copyInto(yaml, values);
+            comments.forEach(yaml::setComments);
+            inlineComments.forEach(yaml::setInlineComments);
+            yaml.options().setHeader(header).setFooter(footer);
+            return yaml.saveToString();
+        }
+    }
+}
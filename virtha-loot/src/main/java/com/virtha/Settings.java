@@ -0,0 +1,159 @@
+package com.virtha;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Sound;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Ajustes de uso frecuente ya resueltos: el sonido, los textos con los códigos de color
+ * traducidos y compilados en plantillas, los límites de loot y la presencia de PlaceholderAPI.
+ * Se construye al cargar o recargar la configuración como parte de la instantánea, así que
+ * abrir un cofre o resolver un placeholder no recorre la configuración ni transforma textos.
+ */
+public final class Settings {
+
+    // Sonido de Minecraft, o null si no hay sonido o es uno personalizado
+    private final Sound lootSound;
+    // Sonido de un paquete de recursos (con espacio de nombres), o null
+    private final String customLootSound;
+    private final float soundVolume;
+    private final float soundPitch;
+    private final MessageTemplate lootMessage;
+    private final MessageTemplate cooldownMessage;
+    private final String availableText;
+    private final MessageTemplate cooldownText;
+    private final int maxItemsPerChest;
+    private final double baseChanceMultiplier;
+    private final boolean placeholderApiEnabled;
+
+    private Settings(Sound lootSound, String customLootSound, float soundVolume, float soundPitch,
+                     MessageTemplate lootMessage, MessageTemplate cooldownMessage, String availableText,
+                     MessageTemplate cooldownText, int maxItemsPerChest, double baseChanceMultiplier,
+                     boolean placeholderApiEnabled) {
+        this.lootSound = lootSound;
+        this.customLootSound = customLootSound;
+        this.soundVolume = soundVolume;
+        this.soundPitch = soundPitch;
+        this.lootMessage = lootMessage;
+        this.cooldownMessage = cooldownMessage;
+        this.availableText = availableText;
+        this.cooldownText = cooldownText;
+        this.maxItemsPerChest = maxItemsPerChest;
+        this.baseChanceMultiplier = baseChanceMultiplier;
+        this.placeholderApiEnabled = placeholderApiEnabled;
+    }
+
+    /**
+     * Construye los ajustes a partir de la configuración
+     * @param config Configuración general (config.yml)
+     * @param lootChests Definiciones de los contenedores, con el bloque settings
+     * @param placeholderApiEnabled Si PlaceholderAPI está instalado
+     * @param logger Logger donde se informan los valores inválidos
+     * @return Ajustes resueltos
+     */
+    public static Settings fromConfig(FileConfiguration config, FileConfiguration lootChests,
+                                      boolean placeholderApiEnabled, Logger logger) {
+        String soundName = config.getString("settings.loot-sound", "ENTITY_PLAYER_LEVELUP");
+        Sound lootSound = null;
+        String customLootSound = null;
+        if (soundName != null && !soundName.isEmpty()) {
+            try {
+                lootSound = Sound.valueOf(soundName.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                if (soundName.indexOf(':') >= 0 || soundName.indexOf('.') >= 0) {
+                    customLootSound = soundName;
+                } else {
+                    logger.warning("Sonido inválido en la configuración: " + soundName);
+                }
+            }
+        }
+
+        return new Settings(lootSound, customLootSound,
+                (float) config.getDouble("settings.sound-volume", 1.0),
+                (float) config.getDouble("settings.sound-pitch", 1.0),
+                MessageTemplate.compile(color(config.getString("settings.loot-message", "&a¡Has abierto un cofre de loot!")), placeholderApiEnabled),
+                MessageTemplate.compile(color(config.getString("settings.cooldown-message",
+                        "&cDebes esperar &e%time_left% segundos &cpara volver a abrir este cofre.")), placeholderApiEnabled),
+                color(config.getString("placeholders.available-text", "&aDisponible")),
+                MessageTemplate.compile(color(config.getString("placeholders.cooldown-text", "&c%time_left%s")), false),
+                lootChests.getInt("settings.max-items-per-chest", 5),
+                lootChests.getDouble("settings.base-chance-multiplier", 1.0),
+                placeholderApiEnabled);
+    }
+
+    private static String color(String text) {
+        return text != null ? ChatColor.translateAlternateColorCodes('&', text) : "";
+    }
+
+    /**
+     * Reproduce el sonido de apertura de un cofre, si está configurado
+     * @param player Jugador que abrió el cofre
+     */
+    public void playLootSound(Player player) {
+        if (lootSound != null) {
+            player.playSound(player.getLocation(), lootSound, soundVolume, soundPitch);
+        } else if (customLootSound != null) {
+            player.playSound(player.getLocation(), customLootSound, soundVolume, soundPitch);
+        }
+    }
+
+    /**
+     * Obtiene el mensaje al abrir un cofre, con los colores ya traducidos
+     * @return Plantilla del mensaje de loot
+     */
+    public MessageTemplate getLootMessage() {
+        return lootMessage;
+    }
+
+    /**
+     * Obtiene el mensaje para un jugador en cooldown, con los colores ya traducidos
+     * @return Plantilla del mensaje de cooldown
+     */
+    public MessageTemplate getCooldownMessage() {
+        return cooldownMessage;
+    }
+
+    /**
+     * Obtiene el texto del placeholder para un cofre disponible, con los colores ya traducidos
+     * @return Texto de cofre disponible
+     */
+    public String getAvailableText() {
+        return availableText;
+    }
+
+    /**
+     * Obtiene el texto del placeholder para un cofre en cooldown, con los colores ya traducidos
+     * @return Plantilla del texto de cooldown
+     */
+    public MessageTemplate getCooldownText() {
+        return cooldownText;
+    }
+
+    /**
+     * Obtiene el número máximo de items con probabilidad independiente por apertura
+     * @return Valor de settings.max-items-per-chest
+     */
+    public int getMaxItemsPerChest() {
+        return maxItemsPerChest;
+    }
+
+    /**
+     * Obtiene el multiplicador global de probabilidad
+     * @return Valor de settings.base-chance-multiplier
+     */
+    public double getBaseChanceMultiplier() {
+        return baseChanceMultiplier;
+    }
+
+    /**
+     * Indica si PlaceholderAPI estaba instalado al cargar la configuración
+     * @return true si se deben aplicar los placeholders de PlaceholderAPI
+     */
+    public boolean isPlaceholderApiEnabled() {
+        return placeholderApiEnabled;
+    }
+}
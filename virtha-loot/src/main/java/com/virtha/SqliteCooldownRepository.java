@@ -0,0 +1,365 @@
+package com.virtha;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Persistencia de los cooldowns en una base de datos SQLite embebida (cooldowns.db).
+ * Los cambios se encolan en una cola acotada y un único hilo los escribe por lotes dentro
+ * de una transacción, así que guardar no implica reescribir todos los cooldowns. Si la cola
+ * se llena, el hilo principal no se bloquea: se descarta el cambio y el escritor reemplaza en
+ * cuanto puede el contenido de la tabla por el del almacén, en una sola transacción.
+ *
+ * El driver de SQLite viene incluido en Spigot.
+ */
+public class SqliteCooldownRepository implements CooldownRepository, CooldownStore.ChangeListener {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS cooldowns ("
+            + "chest TEXT NOT NULL, "
+            + "player_most INTEGER NOT NULL, "
+            + "player_least INTEGER NOT NULL, "
+            + "expiry INTEGER NOT NULL, "
+            + "PRIMARY KEY (chest, player_most, player_least)) WITHOUT ROWID";
+    private static final String CREATE_EXPIRY_INDEX = "CREATE INDEX IF NOT EXISTS cooldowns_expiry ON cooldowns (expiry)";
+    private static final String SELECT_ACTIVE = "SELECT chest, player_most, player_least, expiry FROM cooldowns WHERE expiry > ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO cooldowns (chest, player_most, player_least, expiry) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_CHEST = "DELETE FROM cooldowns WHERE chest = ?";
+    private static final String DELETE_RELEASED = "DELETE FROM cooldowns WHERE chest = ? AND player_most = ? AND player_least = ? AND expiry = ?";
+    private static final String DELETE_EXPIRED = "DELETE FROM cooldowns WHERE expiry <= ?";
+    private static final String DELETE_ALL = "DELETE FROM cooldowns";
+
+    // Marca de una escritura que elimina todos los cooldowns de un cofre
+    private static final long CLEAR_CHEST = -1L;
+
+    private final VirthaLootPlugin plugin;
+    private final CooldownStore store;
+    private final File databaseFile;
+    private final int batchSize;
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final AtomicBoolean resyncRequested = new AtomicBoolean();
+    private final AtomicLong droppedWrites = new AtomicLong();
+    private volatile boolean running;
+    private Connection connection;
+    private Thread writerThread;
+
+    /**
+     * Constructor del backend SQLite
+     * @param plugin Instancia del plugin principal
+     * @param store Almacén de cooldowns
+     */
+    public SqliteCooldownRepository(VirthaLootPlugin plugin, CooldownStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.databaseFile = new File(plugin.getDataFolder(), "cooldowns.db");
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.sqlite.batch-size", 500));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, plugin.getConfig().getInt("storage.sqlite.queue-capacity", 10000)));
+    }
+
+    @Override
+    public void start() {
+        try {
+            openConnection();
+            long currentTime = System.currentTimeMillis();
+            if (!loadActive(currentTime)) {
+                migrateSnapshot(currentTime);
+            }
+        } catch (SQLException | IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "No se pudo abrir la base de datos de cooldowns, no se guardarán los cambios", e);
+            return;
+        }
+
+        store.addListener(this);
+        running = true;
+        writerThread = new Thread(this::runWriter, "VirthaLoot-Cooldowns-SQLite");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void openConnection() throws SQLException, IOException {
+        if (!plugin.getDataFolder().isDirectory() && !plugin.getDataFolder().mkdirs()) {
+            throw new IOException("No se pudo crear la carpeta del plugin");
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            // WAL permite leer mientras se escribe y agrupa las sincronizaciones a disco
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute(CREATE_TABLE);
+            statement.execute(CREATE_EXPIRY_INDEX);
+        }
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * Carga en el almacén los cooldowns activos
+     * @param now Momento actual en milisegundos
+     * @return true si la tabla tenía filas, activas o no
+     */
+    private boolean loadActive(long now) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_ACTIVE)) {
+            select.setLong(1, now);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    store.put(store.chestId(rows.getString(1)), rows.getLong(2), rows.getLong(3), rows.getLong(4));
+                }
+            }
+        }
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT 1 FROM cooldowns LIMIT 1")) {
+            return rows.next();
+        } finally {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Importa los cooldowns del backend de archivos (cooldowns.dat o cooldowns.yml, más el
+     * diario) la primera vez que se usa la base de datos
+     * @param now Momento actual en milisegundos
+     */
+    private void migrateSnapshot(long now) throws SQLException, IOException {
+        if (!CooldownPersistence.readForMigration(plugin, store, now)) {
+            return;
+        }
+
+        plugin.getLogger().info("Migrando los cooldowns del backend de archivos a la base de datos SQLite...");
+        writeAll(now);
+        CooldownPersistence.markMigrated(plugin);
+        plugin.getLogger().info("Cooldowns migrados a cooldowns.db (" + store.size() + " entradas)");
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+
+        if (connection != null) {
+            try {
+                // El escritor ya terminó: lo que quede en la cola se escribe aquí
+                drainAndWrite();
+                connection.close();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "No se pudieron guardar los últimos cooldowns en la base de datos", e);
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    public void onChange(int chestId, long playerMost, long playerLeast, long expiry) {
+        // Las eliminaciones no se escriben: las filas expiradas se purgan periódicamente
+        if (expiry > 0) {
+            enqueue(new PendingWrite(store.getChestName(chestId), playerMost, playerLeast, expiry));
+        }
+    }
+
+    @Override
+    public void onReleased(int chestId, long playerMost, long playerLeast, long expiry) {
+        // La expiración reclamada se encola en negativo para distinguir la liberación de una reclamación
+        enqueue(new PendingWrite(store.getChestName(chestId), playerMost, playerLeast, -expiry));
+    }
+
+    @Override
+    public void onChestCleared(int chestId) {
+        enqueue(new PendingWrite(store.getChestName(chestId), 0L, 0L, CLEAR_CHEST));
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (!queue.offer(write)) {
+            // Cola llena: el almacén sigue siendo la fuente de verdad y la resincronización reemplaza
+            // la tabla entera, así que tampoco se pierden las liberaciones ni los vaciados de cofre
+            droppedWrites.incrementAndGet();
+            resyncRequested.set(true);
+        }
+    }
+
+    @Override
+    public String getName() {
+        long dropped = droppedWrites.get();
+        return dropped > 0 ? "sqlite (" + dropped + " cambios resincronizados por cola llena)" : "sqlite";
+    }
+
+    @Override
+    public int getPendingWrites() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        long purgeInterval = TimeUnit.SECONDS.toMillis(Math.max(1, plugin.getConfig().getInt("storage.flush-interval", 30)));
+        long nextPurge = System.currentTimeMillis() + purgeInterval;
+
+        while (running) {
+            try {
+                PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    List<PendingWrite> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    writeBatch(batch);
+                }
+
+                long currentTime = System.currentTimeMillis();
+                if (resyncRequested.compareAndSet(true, false)) {
+                    writeAll(currentTime);
+                }
+                if (currentTime >= nextPurge) {
+                    purgeExpired(currentTime);
+                    nextPurge = currentTime + purgeInterval;
+                }
+            } catch (InterruptedException e) {
+                // Lo emite shutdown(); el bucle termina al comprobar running
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error al guardar cooldowns en la base de datos", e);
+                rollbackQuietly();
+                // Los cambios del lote se pierden de la cola, pero siguen en el almacén
+                resyncRequested.set(true);
+            }
+        }
+    }
+
+    private void drainAndWrite() throws SQLException {
+        List<PendingWrite> batch = new ArrayList<>(queue.size());
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+        if (resyncRequested.getAndSet(false)) {
+            writeAll(System.currentTimeMillis());
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement deleteChest = connection.prepareStatement(DELETE_CHEST);
+             PreparedStatement deleteReleased = connection.prepareStatement(DELETE_RELEASED)) {
+            for (PendingWrite write : batch) {
+                if (write.expiry == CLEAR_CHEST) {
+                    // Aplicar antes las reclamaciones anteriores para respetar el orden
+                    upsert.executeBatch();
+                    deleteChest.setString(1, write.chestName);
+                    deleteChest.executeUpdate();
+                    continue;
+                }
+                if (write.expiry < 0) {
+                    // Solo se borra la fila si sigue siendo la reclamación liberada
+                    upsert.executeBatch();
+                    deleteReleased.setString(1, write.chestName);
+                    deleteReleased.setLong(2, write.playerMost);
+                    deleteReleased.setLong(3, write.playerLeast);
+                    deleteReleased.setLong(4, -write.expiry);
+                    deleteReleased.executeUpdate();
+                    continue;
+                }
+
+                upsert.setString(1, write.chestName);
+                upsert.setLong(2, write.playerMost);
+                upsert.setLong(3, write.playerLeast);
+                upsert.setLong(4, write.expiry);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Reemplaza el contenido de la tabla por los cooldowns activos del almacén en una sola
+     * transacción, de modo que también desaparecen las filas liberadas o vaciadas cuyo cambio
+     * no llegó a escribirse
+     * @param now Momento actual en milisegundos
+     */
+    private void writeAll(long now) throws SQLException {
+        // Lo encolado hasta ahora ya está en el almacén; aplicarlo después de copiarlo podría
+        // devolver a la tabla filas de un cofre vaciado mientras tanto
+        queue.clear();
+
+        SQLException[] failure = new SQLException[1];
+        try (Statement statement = connection.createStatement();
+             PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+            statement.executeUpdate(DELETE_ALL);
+            int[] pending = new int[1];
+            store.forEach((chestId, playerMost, playerLeast, expiry) -> {
+                if (expiry <= now || failure[0] != null) {
+                    return;
+                }
+                try {
+                    upsert.setString(1, store.getChestName(chestId));
+                    upsert.setLong(2, playerMost);
+                    upsert.setLong(3, playerLeast);
+                    upsert.setLong(4, expiry);
+                    upsert.addBatch();
+                    if (++pending[0] >= batchSize) {
+                        upsert.executeBatch();
+                        pending[0] = 0;
+                    }
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            upsert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private void purgeExpired(long now) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_EXPIRED)) {
+            delete.setLong(1, now);
+            delete.executeUpdate();
+        }
+        connection.commit();
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "No se pudo deshacer la transacción de cooldowns", e);
+        }
+    }
+
+    /**
+     * Cambio pendiente de escribir en la base de datos
+     */
+    private static final class PendingWrite {
+
+        private final String chestName;
+        private final long playerMost;
+        private final long playerLeast;
+        private final long expiry;
+
+        private PendingWrite(String chestName, long playerMost, long playerLeast, long expiry) {
+            this.chestName = chestName;
+            this.playerMost = playerMost;
+            this.playerLeast = playerLeast;
+            this.expiry = expiry;
+        }
+    }
+}
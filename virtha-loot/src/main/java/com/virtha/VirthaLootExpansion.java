@@ -6,13 +6,24 @@ import org.bukkit.entity.Player;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Clase que maneja la integración con PlaceholderAPI para VirthaLoot
+ * Clase que maneja la integración con PlaceholderAPI para VirthaLoot.
+ * Los marcadores y tablas de puntuación piden los placeholders de todos los jugadores varias
+ * veces por segundo, así que cada identificador se analiza una sola vez y el valor calculado se
+ * guarda por jugador durante un segundo, que es la resolución de los tiempos que muestran.
+ * Solo se guardan los identificadores de cofres que existen en la configuración publicada, así
+ * que las cachés no crecen con cualquier texto que otro plugin pida.
  */
 public class VirthaLootExpansion extends PlaceholderExpansion {
 
+    private static final long CACHE_TTL_MILLIS = 1000L;
+
     private final VirthaLootPlugin plugin;
+    // Identificadores ya analizados; PlaceholderAPI puede llamar desde varios hilos
+    private final Map<String, ParsedIdentifier> identifiers = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<String, CachedValue>> values = new ConcurrentHashMap<>();
 
     /**
      * Constructor para la expansión de PlaceholderAPI
@@ -75,61 +86,88 @@ public class VirthaLootExpansion extends PlaceholderExpansion {
             return "";
         }
 
-        // Placeholder para verificar si un cofre específico está disponible
-        // Formato: %virthaloot_available_[nombre_cofre]%
-        if (identifier.startsWith("available_")) {
-            String chestName = identifier.substring("available_".length());
-            return isChestAvailable(onlinePlayer.getUniqueId(), chestName) ? 
-                   plugin.getConfig().getString("placeholders.available-text", "&aDisponible") : 
-                   plugin.getConfig().getString("placeholders.cooldown-text", "&c%time_left%s")
-                         .replace("%time_left%", String.valueOf(getChestCooldownTime(onlinePlayer.getUniqueId(), chestName)));
+        LootSnapshot snapshot = plugin.getSnapshot();
+        ParsedIdentifier parsed = identifiers.get(identifier);
+        if (parsed == null || !isCacheable(parsed, snapshot)) {
+            if (parsed != null) {
+                // El cofre se eliminó después de guardar el identificador
+                identifiers.remove(identifier);
+                for (Map<String, CachedValue> playerValues : values.values()) {
+                    playerValues.remove(identifier);
+                }
+            }
+            parsed = ParsedIdentifier.parse(identifier);
+            if (parsed.type == PlaceholderType.UNKNOWN) {
+                return null;
+            }
+            if (!isCacheable(parsed, snapshot)) {
+                // Cofre inexistente: se calcula sin guardar nada
+                return evaluate(onlinePlayer, parsed);
+            }
+            identifiers.put(identifier, parsed);
         }
 
-        // Placeholder para obtener el tiempo restante de cooldown de un cofre
-        // Formato: %virthaloot_cooldown_[nombre_cofre]%
-        if (identifier.startsWith("cooldown_")) {
-            String chestName = identifier.substring("cooldown_".length());
-            return String.valueOf(getChestCooldownTime(onlinePlayer.getUniqueId(), chestName));
+        long now = System.currentTimeMillis();
+        Map<String, CachedValue> playerValues = values.computeIfAbsent(onlinePlayer.getUniqueId(), id -> new ConcurrentHashMap<>());
+        CachedValue cached = playerValues.get(identifier);
+        if (cached != null && now < cached.expiresAt) {
+            return cached.value;
         }
 
-        // Placeholder para obtener el número total de cofres disponibles para el jugador
-        // Formato: %virthaloot_available_count%
-        if (identifier.equals("available_count")) {
-            return String.valueOf(getAvailableChestsCount(onlinePlayer.getUniqueId()));
-        }
+        String value = evaluate(onlinePlayer, parsed);
+        playerValues.put(identifier, new CachedValue(value, now + CACHE_TTL_MILLIS));
+        return value;
+    }
 
-        return null;
+    private static boolean isCacheable(ParsedIdentifier parsed, LootSnapshot snapshot) {
+        return parsed.chestName == null || snapshot.getLootTables().containsKey(parsed.chestName);
     }
 
     /**
-     * Verifica si un cofre está disponible para un jugador
+     * Olvida los valores guardados de un jugador, al desconectarse
      * @param playerId UUID del jugador
-     * @param chestName Nombre del cofre
-     * @return true si el cofre está disponible, false si está en cooldown
      */
-    private boolean isChestAvailable(UUID playerId, String chestName) {
-        Map<UUID, Long> playerCooldowns = plugin.getChestCooldowns().get(chestName);
-        if (playerCooldowns == null || !playerCooldowns.containsKey(playerId)) {
-            return true;
-        }
+    public void forget(UUID playerId) {
+        values.remove(playerId);
+    }
 
-        long cooldownTime = playerCooldowns.get(playerId);
-        return System.currentTimeMillis() >= cooldownTime;
+    private String evaluate(Player player, ParsedIdentifier parsed) {
+        switch (parsed.type) {
+            case AVAILABLE:
+                // Formato: %virthaloot_available_[nombre_cofre]%
+                Settings settings = plugin.getSettings();
+                long cooldownTime = plugin.getCooldownStore().get(parsed.chestName, getCooldownKey(player, parsed.chestName));
+                long currentTime = System.currentTimeMillis();
+                return currentTime >= cooldownTime ?
+                       settings.getAvailableText() :
+                       settings.getCooldownText().render(player, parsed.chestName, (cooldownTime - currentTime) / 1000, 0);
+            case COOLDOWN:
+                // Formato: %virthaloot_cooldown_[nombre_cofre]%
+                return String.valueOf(getChestCooldownTime(player, parsed.chestName));
+            case AVAILABLE_COUNT:
+                // Formato: %virthaloot_available_count%
+                return String.valueOf(plugin.getAvailabilityTracker().getAvailableCount(player, plugin.getSnapshot()));
+            case NEXT_AVAILABLE:
+                // Formato: %virthaloot_next_available%
+                AvailabilityTracker.NextExpiry next = plugin.getAvailabilityTracker().getNextAvailable(player, plugin.getSnapshot());
+                return next != null ? next.getChestName() : "";
+            case NEXT_AVAILABLE_IN:
+                // Formato: %virthaloot_next_available_in%
+                AvailabilityTracker.NextExpiry nextIn = plugin.getAvailabilityTracker().getNextAvailable(player, plugin.getSnapshot());
+                return String.valueOf(nextIn != null ? Math.max(0L, (nextIn.getExpiry() - System.currentTimeMillis()) / 1000) : 0L);
+            default:
+                return null;
+        }
     }
 
     /**
      * Obtiene el tiempo restante de cooldown para un cofre
-     * @param playerId UUID del jugador
+     * @param player Jugador
      * @param chestName Nombre del cofre
      * @return Tiempo restante en segundos, 0 si está disponible
      */
-    private long getChestCooldownTime(UUID playerId, String chestName) {
-        Map<UUID, Long> playerCooldowns = plugin.getChestCooldowns().get(chestName);
-        if (playerCooldowns == null || !playerCooldowns.containsKey(playerId)) {
-            return 0;
-        }
-
-        long cooldownTime = playerCooldowns.get(playerId);
+    private long getChestCooldownTime(Player player, String chestName) {
+        long cooldownTime = plugin.getCooldownStore().get(chestName, getCooldownKey(player, chestName));
         long currentTime = System.currentTimeMillis();
 
         if (currentTime >= cooldownTime) {
@@ -139,18 +177,67 @@ public class VirthaLootExpansion extends PlaceholderExpansion {
         return (cooldownTime - currentTime) / 1000; // Convertir a segundos
     }
 
+    private UUID getCooldownKey(Player player, String chestName) {
+        return plugin.getCooldownKey(plugin.getSnapshot().getLootTables().get(chestName), player);
+    }
+
     /**
-     * Obtiene el número de cofres disponibles para un jugador
-     * @param playerId UUID del jugador
-     * @return Número de cofres disponibles
+     * Tipos de placeholder de la expansión
+     */
+    private enum PlaceholderType {
+        AVAILABLE,
+        COOLDOWN,
+        AVAILABLE_COUNT,
+        NEXT_AVAILABLE,
+        NEXT_AVAILABLE_IN,
+        UNKNOWN
+    }
+
+    /**
+     * Identificador analizado: tipo de placeholder y cofre al que se refiere
      */
-    private int getAvailableChestsCount(UUID playerId) {
-        int count = 0;
-        for (String chestName : plugin.getLootChestsConfig().getConfigurationSection("chests").getKeys(false)) {
-            if (isChestAvailable(playerId, chestName)) {
-                count++;
+    private static final class ParsedIdentifier {
+
+        private final PlaceholderType type;
+        private final String chestName;
+
+        private ParsedIdentifier(PlaceholderType type, String chestName) {
+            this.type = type;
+            this.chestName = chestName;
+        }
+
+        private static ParsedIdentifier parse(String identifier) {
+            // available_count se comprueba antes que available_ para no confundirlo con un cofre
+            if (identifier.equals("available_count")) {
+                return new ParsedIdentifier(PlaceholderType.AVAILABLE_COUNT, null);
+            }
+            if (identifier.equals("next_available")) {
+                return new ParsedIdentifier(PlaceholderType.NEXT_AVAILABLE, null);
+            }
+            if (identifier.equals("next_available_in")) {
+                return new ParsedIdentifier(PlaceholderType.NEXT_AVAILABLE_IN, null);
             }
+            if (identifier.startsWith("available_")) {
+                return new ParsedIdentifier(PlaceholderType.AVAILABLE, identifier.substring("available_".length()));
+            }
+            if (identifier.startsWith("cooldown_")) {
+                return new ParsedIdentifier(PlaceholderType.COOLDOWN, identifier.substring("cooldown_".length()));
+            }
+            return new ParsedIdentifier(PlaceholderType.UNKNOWN, null);
+        }
+    }
+
+    /**
+     * Valor calculado de un placeholder y momento en que deja de ser válido
+     */
+    private static final class CachedValue {
+
+        private final String value;
+        private final long expiresAt;
+
+        private CachedValue(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
         }
-        return count;
     }
-}
\ No newline at end of file
+}
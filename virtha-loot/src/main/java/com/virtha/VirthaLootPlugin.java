@@ -1,6 +1,5 @@
 package com.virtha;
 
-import me.clip.placeholderapi.PlaceholderAPI;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -9,13 +8,13 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -23,27 +22,96 @@ import org.bukkit.plugin.java.JavaPlugin;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
+import java.util.random.RandomGenerator;
 
 public class VirthaLootPlugin extends JavaPlugin implements Listener {
 
-    private File lootChestsFile;
-    private FileConfiguration lootChestsConfig;
-    private File cooldownsFile;
-    private FileConfiguration cooldownsConfig;
+    private ChestFileStorage chestFileStorage;
+    private ChestFileWatcher fileWatcher;
     private LootManager lootManager;
     private LootChestEditor lootChestEditor;
+    private RandomService randomService;
+    private ExpiryWheel expiryWheel;
+    private CooldownRepository cooldownRepository;
+    private ClusterSync clusterSync;
+    private SaveCoordinator saveCoordinator;
+    private RewardCommandDispatcher rewardDispatcher;
+    private OpenAdmissionController admissionController;
+    private InteractionCache interactionCache;
+    private VirthaLootExpansion placeholderExpansion;
+    private AvailabilityTracker availabilityTracker;
+    private PlayerGroupCache groupCache;
+    // Configuración publicada; /vloot reload la sustituye completa con una sola asignación
+    private volatile LootSnapshot snapshot;
+    private boolean reloading;
     
-    // Mapa para almacenar los cooldowns de los jugadores para cada contenedor
-    private final Map<String, Map<UUID, Long>> chestCooldowns = new ConcurrentHashMap<>();
+    // Almacén de los cooldowns de los jugadores para cada contenedor
+    private final CooldownStore cooldownStore = new CooldownStore();
     
     /**
-     * Obtiene el mapa de cooldowns de los contenedores
-     * @return Mapa con los cooldowns de los contenedores
+     * Obtiene la clave con la que se guarda el cooldown de un jugador en un contenedor,
+     * según el alcance compilado en su tabla de loot. Fuera del hilo principal los grupos
+     * salen de la caché de grupos en lugar del scoreboard o los permisos.
+     * @param lootTable Tabla de loot del contenedor, o null si el contenedor no existe
+     * @param player Jugador que abre el contenedor
+     * @return Clave del almacén de cooldowns
      */
-    public Map<String, Map<UUID, Long>> getChestCooldowns() {
-        return chestCooldowns;
+    public UUID getCooldownKey(LootTable lootTable, Player player) {
+        if (lootTable == null) {
+            return player.getUniqueId();
+        }
+        if (lootTable.getCooldownScope() != CooldownScope.GROUP) {
+            return lootTable.resolveCooldownKey(player);
+        }
+        UUID groupKey = getGroupKey(player, lootTable.isPermissionGroup());
+        return groupKey != null ? groupKey : player.getUniqueId();
+    }
+    
+    /**
+     * Obtiene la clave compartida del grupo de un jugador. Fuera del hilo principal sale de la
+     * caché de grupos en lugar del scoreboard o los permisos.
+     * @param player Jugador
+     * @param permissionGroup Si el grupo sale de los permisos en lugar del equipo del scoreboard
+     * @return Clave del grupo, o null si el jugador no pertenece a ninguno
+     */
+    public UUID getGroupKey(Player player, boolean permissionGroup) {
+        if (Bukkit.isPrimaryThread()) {
+            return CooldownScope.findGroupKey(player, permissionGroup);
+        }
+        return groupCache.getGroupKey(player.getUniqueId(), permissionGroup);
+    }
+    
+    /**
+     * Obtiene el almacén de cooldowns de los contenedores
+     * @return Almacén con los cooldowns de los contenedores
+     */
+    public CooldownStore getCooldownStore() {
+        return cooldownStore;
+    }
+    
+    /**
+     * Obtiene el seguimiento de los cofres en cooldown de cada jugador
+     * @return Seguimiento de disponibilidad
+     */
+    public AvailabilityTracker getAvailabilityTracker() {
+        return availabilityTracker;
+    }
+    
+    /**
+     * Obtiene la caché de las claves de grupo de los jugadores conectados
+     * @return Caché de grupos
+     */
+    public PlayerGroupCache getGroupCache() {
+        return groupCache;
+    }
+    
+    /**
+     * Obtiene la rueda de expiración de los cooldowns
+     * @return Instancia del ExpiryWheel
+     */
+    public ExpiryWheel getExpiryWheel() {
+        return expiryWheel;
     }
     
     /**
@@ -51,7 +119,43 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
      * @return Configuración de los contenedores de loot
      */
     public FileConfiguration getLootChestsConfig() {
-        return lootChestsConfig;
+        return snapshot.getLootChests();
+    }
+    
+    /**
+     * Obtiene la instantánea de configuración publicada
+     * @return Instantánea actual
+     */
+    public LootSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Publica una instantánea derivada de la actual tras un cambio del editor o de los comandos.
+     * Debe llamarse desde el hilo principal.
+     * @param updated Instantánea a publicar
+     */
+    public void publishSnapshot(LootSnapshot updated) {
+        snapshot = updated;
+    }
+    
+    /**
+     * Obtiene los ajustes de uso frecuente de la instantánea publicada
+     * @return Ajustes ya resueltos
+     */
+    public Settings getSettings() {
+        return snapshot.getSettings();
+    }
+    
+    /**
+     * Obtiene config.yml desde la instantánea publicada, para que todas las lecturas vean
+     * los cambios aplicados con /vloot reload
+     * @return Configuración general del plugin
+     */
+    @Override
+    public FileConfiguration getConfig() {
+        LootSnapshot current = snapshot;
+        return current != null ? current.getConfig() : super.getConfig();
     }
     
     /**
@@ -62,6 +166,22 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         return lootManager;
     }
     
+    /**
+     * Obtiene el servicio de números aleatorios del plugin
+     * @return Instancia del RandomService
+     */
+    public RandomService getRandomService() {
+        return randomService;
+    }
+    
+    /**
+     * Obtiene el índice de ubicaciones de los contenedores de loot
+     * @return Índice de ubicaciones
+     */
+    public ChestLocationIndex getChestIndex() {
+        return snapshot.getIndex();
+    }
+    
     @Override
     public void onEnable() {
         // Registrar eventos
@@ -70,18 +190,68 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         // Crear configuración por defecto
         saveDefaultConfig();
         
-        // Inicializar archivos de configuración personalizados
+        // Inicializar archivos de configuración personalizados, compilar los contenedores e indexar sus ubicaciones
+        saveCoordinator = new SaveCoordinator(this, getConfig().getLong("storage.config-save-delay-ticks", 20L));
         setupCustomConfigs();
         
+        // Programar la eliminación automática de los cooldowns expirados
+        expiryWheel = new ExpiryWheel(cooldownStore, System.currentTimeMillis());
+        cooldownStore.addListener(expiryWheel);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> expiryWheel.advance(System.currentTimeMillis()), 20L, 20L);
+        
+        // Contar los cofres en cooldown de cada jugador para los placeholders, antes de cargar los cooldowns
+        availabilityTracker = new AvailabilityTracker(this, cooldownStore);
+        cooldownStore.addListener(availabilityTracker);
+        
+        // Grupos de los jugadores para los placeholders, que se evalúan fuera del hilo principal
+        groupCache = new PlayerGroupCache(this);
+        groupCache.start();
+        
         // Cargar cooldowns existentes
         loadCooldowns();
         
+        // Compartir los cooldowns con otros servidores de la red
+        ConfigurationSection clusterSection = getConfig().getConfigurationSection("cluster");
+        if (clusterSection != null && clusterSection.getBoolean("enabled", false)) {
+            clusterSync = new ClusterSync(this, cooldownStore, clusterSection);
+            if (!clusterSync.start()) {
+                clusterSync = null;
+            }
+        }
+        
+        // Inicializar el generador de números aleatorios
+        randomService = RandomService.fromConfig(getConfig().getConfigurationSection("random"));
+        if (randomService.isDeterministic()) {
+            getLogger().info("Modo determinista activado con semilla " + randomService.getSeed() + ".");
+        }
+        
         // Inicializar el gestor de loot
         lootManager = new LootManager(this);
         
+        // Cola de los comandos de recompensa, ejecutada con un presupuesto por tick
+        rewardDispatcher = new RewardCommandDispatcher(this, getConfig().getConfigurationSection("rewards"));
+        rewardDispatcher.start();
+        
+        // Límite de aperturas de cofres procesadas por tick
+        admissionController = new OpenAdmissionController(this, getConfig().getConfigurationSection("admission"));
+        admissionController.start();
+        
+        // Resultado del último clic de cada jugador, para resolver los clics repetidos
+        interactionCache = new InteractionCache(this, getConfig().getConfigurationSection("interaction"));
+        interactionCache.start();
+        
         // Inicializar el editor de cofres de loot
         lootChestEditor = new LootChestEditor(this);
         
+        // Aplicar los cambios hechos en los archivos desde fuera del servidor
+        if (getConfig().getBoolean("watcher.enabled", true)) {
+            fileWatcher = new ChestFileWatcher(this, chestFileStorage, saveCoordinator,
+                    new File(getDataFolder(), "chests"), getConfig().getLong("watcher.debounce-ms", 500L));
+            if (!fileWatcher.start()) {
+                fileWatcher = null;
+            }
+        }
+        
         // Registrar el TabCompleter para los comandos
         VirthaLootTabCompleter tabCompleter = new VirthaLootTabCompleter(this);
         getCommand("virthaloot").setTabCompleter(tabCompleter);
@@ -90,7 +260,8 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         if (Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null) {
             getLogger().info("PlaceholderAPI encontrado! Integración activada.");
             // Registrar la expansión de PlaceholderAPI
-            new VirthaLootExpansion(this).register();
+            placeholderExpansion = new VirthaLootExpansion(this);
+            placeholderExpansion.register();
         } else {
             getLogger().warning("PlaceholderAPI no encontrado. Los placeholders no funcionarán.");
         }
@@ -101,80 +272,78 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
     
     @Override
     public void onDisable() {
-        // Guardar datos antes de desactivar el plugin
+        // Enviar las últimas reclamaciones al clúster y guardar datos antes de desactivar el plugin
+        if (fileWatcher != null) {
+            fileWatcher.shutdown();
+        }
+        if (interactionCache != null) {
+            interactionCache.shutdown();
+        }
+        if (groupCache != null) {
+            groupCache.shutdown();
+        }
+        if (admissionController != null) {
+            admissionController.shutdown();
+        }
+        if (rewardDispatcher != null) {
+            rewardDispatcher.shutdown();
+        }
+        if (clusterSync != null) {
+            clusterSync.shutdown();
+        }
+        if (saveCoordinator != null) {
+            saveCoordinator.shutdown();
+        }
         saveCooldowns();
         getLogger().info("VirthaLoot ha sido deshabilitado correctamente!");
     }
     
     private void setupCustomConfigs() {
         // Configuración para los contenedores de loot
-        lootChestsFile = new File(getDataFolder(), "lootchests.yml");
+        File lootChestsFile = new File(getDataFolder(), "lootchests.yml");
         if (!lootChestsFile.exists()) {
             lootChestsFile.getParentFile().mkdirs();
             saveResource("lootchests.yml", false);
         }
-        lootChestsConfig = YamlConfiguration.loadConfiguration(lootChestsFile);
         
-        // Configuración para los cooldowns
-        cooldownsFile = new File(getDataFolder(), "cooldowns.yml");
-        if (!cooldownsFile.exists()) {
-            cooldownsFile.getParentFile().mkdirs();
-            try {
-                cooldownsFile.createNewFile();
-            } catch (IOException e) {
-                getLogger().log(Level.SEVERE, "No se pudo crear el archivo cooldowns.yml", e);
-            }
-        }
-        cooldownsConfig = YamlConfiguration.loadConfiguration(cooldownsFile);
+        // Cada cofre tiene su propio archivo en chests/; lootchests.yml solo guarda los ajustes globales
+        chestFileStorage = new ChestFileStorage(lootChestsFile, new File(getDataFolder(), "chests"), saveCoordinator, getLogger());
+        // Al arrancar se usa lo que se haya podido leer; los problemas ya quedan en la consola
+        snapshot = LootSnapshot.load(this, chestFileStorage, new ArrayList<>());
     }
     
-    private void saveLootChestsConfig() {
-        try {
-            lootChestsConfig.save(lootChestsFile);
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "No se pudo guardar el archivo lootchests.yml", e);
-        }
+    /**
+     * Pide guardar la definición de un contenedor en su archivo, o borrarlo si ya no existe.
+     * El guardado se agrupa con los que lleguen poco después y se escribe en un hilo asíncrono;
+     * si falla se avisa al jugador.
+     * @param chestName Nombre del contenedor modificado
+     * @param requester Jugador que hizo el cambio, o null si no hay ninguno
+     */
+    public void saveChest(String chestName, Player requester) {
+        chestFileStorage.saveChest(getLootChestsConfig(), chestName, requester);
     }
     
     private void saveCooldowns() {
-        // Convertir el mapa de cooldowns a formato que se puede guardar en YAML
-        for (Map.Entry<String, Map<UUID, Long>> entry : chestCooldowns.entrySet()) {
-            String chestId = entry.getKey();
-            Map<UUID, Long> playerCooldowns = entry.getValue();
-            
-            for (Map.Entry<UUID, Long> cooldownEntry : playerCooldowns.entrySet()) {
-                UUID playerId = cooldownEntry.getKey();
-                Long cooldownTime = cooldownEntry.getValue();
-                
-                cooldownsConfig.set("cooldowns." + chestId + "." + playerId.toString(), cooldownTime);
-            }
-        }
-        
-        try {
-            cooldownsConfig.save(cooldownsFile);
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "No se pudo guardar el archivo cooldowns.yml", e);
+        // Volcar los cambios pendientes en el hilo actual
+        if (cooldownRepository != null) {
+            cooldownRepository.shutdown();
         }
     }
     
     private void loadCooldowns() {
-        ConfigurationSection cooldownsSection = cooldownsConfig.getConfigurationSection("cooldowns");
-        if (cooldownsSection != null) {
-            for (String chestId : cooldownsSection.getKeys(false)) {
-                ConfigurationSection chestSection = cooldownsSection.getConfigurationSection(chestId);
-                if (chestSection != null) {
-                    Map<UUID, Long> playerCooldowns = new HashMap<>();
-                    
-                    for (String playerIdStr : chestSection.getKeys(false)) {
-                        UUID playerId = UUID.fromString(playerIdStr);
-                        long cooldownTime = chestSection.getLong(playerIdStr);
-                        playerCooldowns.put(playerId, cooldownTime);
-                    }
-                    
-                    chestCooldowns.put(chestId, playerCooldowns);
-                }
+        String backend = getConfig().getString("storage.backend", "file");
+        if ("sqlite".equalsIgnoreCase(backend)) {
+            cooldownRepository = new SqliteCooldownRepository(this, cooldownStore);
+        } else if ("player".equalsIgnoreCase(getConfig().getString("storage.mode", "global"))) {
+            // En modo "player" solo se mantienen en memoria los cooldowns de los jugadores conectados
+            cooldownRepository = new PlayerCooldownStorage(this, cooldownStore);
+        } else {
+            if (!"file".equalsIgnoreCase(backend)) {
+                getLogger().warning("Backend de cooldowns desconocido '" + backend + "', se usará 'file'");
             }
+            cooldownRepository = new CooldownPersistence(this, cooldownStore);
         }
+        cooldownRepository.start();
     }
     
     @Override
@@ -283,6 +452,30 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
                 }
                 return true;
                 
+            case "stats":
+                if (!player.hasPermission("virthaloot.admin")) {
+                    player.sendMessage("§cNo tienes permiso para usar este comando.");
+                    return true;
+                }
+                showStats(player);
+                return true;
+                
+            case "export":
+                if (!player.hasPermission("virthaloot.admin")) {
+                    player.sendMessage("§cNo tienes permiso para usar este comando.");
+                    return true;
+                }
+                exportCooldowns(player);
+                return true;
+                
+            case "reload":
+                if (!player.hasPermission("virthaloot.admin")) {
+                    player.sendMessage("§cNo tienes permiso para usar este comando.");
+                    return true;
+                }
+                reloadLoot(player);
+                return true;
+                
             default:
                 sendHelpMessage(player);
                 return true;
@@ -298,6 +491,107 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         player.sendMessage("§e/vloot delete <nombre> §7- Elimina un contenedor de loot");
         player.sendMessage("§e/vloot chance <probabilidad> §7- Configura la probabilidad del item seleccionado");
         player.sendMessage("§e/vloot cooldown <nombre> <segundos> §7- Modifica el cooldown de un contenedor");
+        player.sendMessage("§e/vloot stats §7- Muestra estadísticas internas del plugin");
+        player.sendMessage("§e/vloot export §7- Exporta los cooldowns activos a cooldowns-export.yml");
+        player.sendMessage("§e/vloot reload §7- Recarga config.yml y las definiciones de los contenedores");
+    }
+    
+    /**
+     * Muestra las estadísticas internas del plugin
+     * @param player Jugador que recibirá las estadísticas
+     */
+    private void showStats(Player player) {
+        player.sendMessage("§6=== VirthaLoot - Estadísticas ===§r");
+        player.sendMessage("§eContenedores indexados: §7" + getChestIndex().size());
+        player.sendMessage("§eCooldowns en memoria: §7" + cooldownStore.size());
+        player.sendMessage("§eExpiraciones programadas: §7" + expiryWheel.getPendingCount());
+        player.sendMessage("§eCooldowns expirados eliminados: §7" + expiryWheel.getEvictedCount());
+        player.sendMessage("§eClaves con cofres en cooldown: §7" + availabilityTracker.getTrackedKeys());
+        player.sendMessage("§eAlmacenamiento de cooldowns: §7" + cooldownRepository.getName());
+        player.sendMessage("§eCambios de cooldown pendientes de guardar: §7" + cooldownRepository.getPendingWrites());
+        player.sendMessage("§eAperturas inmediatas/aplazadas: §7" + admissionController.getImmediateCount()
+                + "/" + admissionController.getDeferredCount() + String.format(Locale.ROOT, " §8(coste medio %.2f ms)",
+                admissionController.getAverageOpenCostMillis()));
+        player.sendMessage("§eAperturas en cola (máx.): §7" + admissionController.getQueueDepth()
+                + " (" + admissionController.getMaxQueueDepth() + ")" + String.format(Locale.ROOT,
+                " §8(espera media %.1f ms, máx. %.1f ms)", admissionController.getAverageDeferredWaitMillis(),
+                admissionController.getMaxDeferredWaitMillis()));
+        player.sendMessage("§eComandos de recompensa en cola (máx.): §7" + rewardDispatcher.getQueueDepth()
+                + " (" + rewardDispatcher.getMaxQueueDepth() + ")");
+        player.sendMessage("§eComandos de recompensa ejecutados: §7" + rewardDispatcher.getExecutedCount()
+                + String.format(Locale.ROOT, " §8(espera media %.1f ms, máx. %.1f ms)",
+                rewardDispatcher.getAverageLatencyMillis(), rewardDispatcher.getMaxLatencyMillis()));
+        if (clusterSync != null) {
+            player.sendMessage("§eNodo del clúster: §7" + clusterSync.getDescription());
+            player.sendMessage("§eCambios enviados/recibidos/aplicados: §7" + clusterSync.getSentCount()
+                    + "/" + clusterSync.getReceivedCount() + "/" + clusterSync.getAppliedCount());
+        }
+    }
+    
+    /**
+     * Exporta los cooldowns activos a un archivo YAML legible, en un hilo asíncrono
+     * @param player Jugador que solicitó la exportación
+     */
+    private void exportCooldowns(Player player) {
+        File exportFile = new File(getDataFolder(), "cooldowns-export.yml");
+        player.sendMessage("§eExportando cooldowns...");
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            try {
+                int exported = CooldownYamlConverter.exportYaml(exportFile, cooldownStore, System.currentTimeMillis());
+                Bukkit.getScheduler().runTask(this, () ->
+                        player.sendMessage("§aSe exportaron §f" + exported + " §acooldowns a " + exportFile.getName() + "."));
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "No se pudo exportar los cooldowns", e);
+                Bukkit.getScheduler().runTask(this, () ->
+                        player.sendMessage("§cNo se pudo exportar los cooldowns. Revisa la consola."));
+            }
+        });
+    }
+    
+    /**
+     * Recarga config.yml y los contenedores en un hilo asíncrono y publica la nueva instantánea
+     * si es válida; si no, se mantiene la anterior
+     * @param sender Jugador o consola que solicitó la recarga
+     */
+    public void reloadLoot(CommandSender sender) {
+        if (reloading) {
+            sender.sendMessage("§cYa hay una recarga en curso.");
+            return;
+        }
+        reloading = true;
+        sender.sendMessage("§eRecargando la configuración...");
+        
+        // Se lee en el hilo de guardado, después de escribir los cambios pendientes del editor
+        saveCoordinator.runAfterWrites(() -> {
+            List<String> errors = new ArrayList<>();
+            LootSnapshot loaded = null;
+            try {
+                loaded = LootSnapshot.load(this, chestFileStorage, errors);
+            } catch (RuntimeException e) {
+                getLogger().log(Level.SEVERE, "Error al recargar la configuración", e);
+                errors.add(e.toString());
+            }
+            
+            LootSnapshot result = loaded;
+            Bukkit.getScheduler().runTask(this, () -> {
+                reloading = false;
+                if (!errors.isEmpty()) {
+                    sender.sendMessage("§cNo se aplicó la recarga, se mantiene la configuración anterior:");
+                    for (String error : errors) {
+                        sender.sendMessage("§7- " + error);
+                    }
+                    return;
+                }
+                
+                snapshot = result;
+                randomService = RandomService.fromConfig(getConfig().getConfigurationSection("random"));
+                // Los servicios del hilo principal leen sus límites de la nueva config.yml
+                rewardDispatcher.configure(getConfig().getConfigurationSection("rewards"));
+                admissionController.configure(getConfig().getConfigurationSection("admission"));
+                interactionCache.configure(getConfig().getConfigurationSection("interaction"));
+                sender.sendMessage("§aConfiguración recargada: §f" + result.getIndex().size() + " §acontenedores.");
+            });
+        });
     }
     
     /**
@@ -354,6 +648,7 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
      * @param cooldown Tiempo de cooldown en segundos
      */
     private void setChestCooldown(Player player, String chestName, int cooldown) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         // Verificar si existe el contenedor
         if (!lootChestsConfig.contains("chests." + chestName)) {
             player.sendMessage("§cNo existe ningún contenedor de loot con ese nombre.");
@@ -362,18 +657,27 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         
         // Actualizar el cooldown
         lootChestsConfig.set("chests." + chestName + ".cooldown", cooldown);
-        saveLootChestsConfig();
+        // El cooldown forma parte de la tabla compilada
+        lootManager.compile(chestName);
+        saveChest(chestName, player);
         
         player.sendMessage("§aCooldown del contenedor '" + chestName + "' actualizado a §f" + cooldown + " segundos§a.");
     }
     
     private void createLootChest(Player player, String name, int cooldownSeconds) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         Block targetBlock = player.getTargetBlock(null, 5);
         if (targetBlock.getType() == Material.AIR) {
             player.sendMessage("§cDebes estar mirando a un bloque sólido para crear un contenedor de loot.");
             return;
         }
         
+        // El nombre se usa también como nombre de su archivo en chests/
+        if (!ChestFileStorage.isValidName(name)) {
+            player.sendMessage("§cEl nombre solo puede contener letras, números, guiones y guiones bajos.");
+            return;
+        }
+        
         // Verificar si ya existe un contenedor con ese nombre
         if (lootChestsConfig.contains("chests." + name)) {
             player.sendMessage("§cYa existe un contenedor de loot con ese nombre.");
@@ -389,13 +693,16 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         lootChestsConfig.set("chests." + name + ".blockType", blockType);
         lootChestsConfig.set("chests." + name + ".cooldown", cooldownSeconds);
         lootChestsConfig.set("chests." + name + ".items", new ArrayList<>()); // Lista vacía para los items
+        // Publica una instantánea con el contenedor ya indexado y compilado
+        lootManager.compile(name);
         
-        saveLootChestsConfig();
+        saveChest(name, player);
         player.sendMessage("§aContenedor de loot '" + name + "' creado correctamente con un cooldown de " + cooldownSeconds + " segundos.");
     }
     
     
     private void editLootChest(Player player, String name) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         // Verificar si existe el cofre
         if (!lootChestsConfig.contains("chests." + name)) {
             player.sendMessage("§cNo existe ningún cofre de loot con ese nombre.");
@@ -412,6 +719,7 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
     }
     
     private void showChestInfo(Player player, String name) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         // Verificar si existe el contenedor
         if (!lootChestsConfig.contains("chests." + name)) {
             player.sendMessage("§cNo existe ningún contenedor de loot con ese nombre.");
@@ -426,11 +734,11 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         player.sendMessage("§eUbicación: §7" + locationStr);
         player.sendMessage("§eTipo de bloque: §7" + blockType);
         player.sendMessage("§eCooldown: §7" + cooldown + " segundos");
+        player.sendMessage("§eAlcance del cooldown: §7" + lootChestsConfig.getString("chests." + name + ".cooldown-scope", "player"));
         
         // Si el jugador tiene un cooldown activo para este contenedor, mostrar tiempo restante
-        Map<UUID, Long> playerCooldowns = chestCooldowns.get(name);
-        if (playerCooldowns != null && playerCooldowns.containsKey(player.getUniqueId())) {
-            long cooldownTime = playerCooldowns.get(player.getUniqueId());
+        long cooldownTime = cooldownStore.get(name, getCooldownKey(snapshot.getLootTables().get(name), player));
+        if (cooldownTime != 0) {
             long currentTime = System.currentTimeMillis();
             long timeLeft = (cooldownTime - currentTime) / 1000; // Convertir a segundos
             
@@ -445,6 +753,7 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
     }
     
     private void listLootChests(Player player) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         ConfigurationSection chestsSection = lootChestsConfig.getConfigurationSection("chests");
         if (chestsSection == null || chestsSection.getKeys(false).isEmpty()) {
             player.sendMessage("§cNo hay contenedores de loot registrados.");
@@ -461,6 +770,7 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
     }
     
     private void deleteLootChest(Player player, String name) {
+        FileConfiguration lootChestsConfig = getLootChestsConfig();
         // Verificar si existe el contenedor
         if (!lootChestsConfig.contains("chests." + name)) {
             player.sendMessage("§cNo existe ningún contenedor de loot con ese nombre.");
@@ -468,16 +778,12 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
         }
         
         lootChestsConfig.set("chests." + name, null);
-        saveLootChestsConfig();
+        // Publica una instantánea sin el contenedor en el índice ni en las tablas
+        lootManager.compile(name);
+        saveChest(name, player);
         
-        // Eliminar también los cooldowns asociados
-        chestCooldowns.remove(name);
-        cooldownsConfig.set("cooldowns." + name, null);
-        try {
-            cooldownsConfig.save(cooldownsFile);
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "No se pudo guardar el archivo cooldowns.yml", e);
-        }
+        // Eliminar también los cooldowns asociados (se guarda de forma asíncrona)
+        cooldownStore.removeChest(name);
         
         player.sendMessage("§aContenedor de loot '" + name + "' eliminado correctamente.");
     }
@@ -493,140 +799,118 @@ public class VirthaLootPlugin extends JavaPlugin implements Listener {
             return;
         }
         
+        // Toda la apertura usa la misma instantánea aunque se publique otra mientras tanto
+        LootSnapshot current = snapshot;
         Player player = event.getPlayer();
-        Location loc = clickedBlock.getLocation();
-        String locString = loc.getWorld().getName() + "," + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ();
+        long currentTime = System.currentTimeMillis();
+        
+        // Evento de la otra mano o clic repetido sobre un cofre que sigue en cooldown
+        if (interactionCache.handleRepeatedClick(player, clickedBlock, current, currentTime)) {
+            event.setCancelled(true);
+            return;
+        }
         
         // Buscar si este bloque es un contenedor de loot
-        ConfigurationSection chestsSection = lootChestsConfig.getConfigurationSection("chests");
-        if (chestsSection == null) {
+        ChestLocationIndex.IndexedChest indexedChest = current.getIndex().get(clickedBlock);
+        if (indexedChest == null) {
             return;
         }
         
-        for (String chestName : chestsSection.getKeys(false)) {
-            String chestLoc = lootChestsConfig.getString("chests." + chestName + ".location");
-            if (chestLoc != null && chestLoc.equals(locString)) {
-                // Verificar si el tipo de bloque coincide (para compatibilidad con versiones anteriores)
-                String configBlockType = lootChestsConfig.getString("chests." + chestName + ".blockType");
-                if (configBlockType != null && !configBlockType.equals(clickedBlock.getType().toString())) {
-                    // El bloque ha sido reemplazado por otro tipo
-                    continue;
-                }
-                
-                // Es un contenedor de loot, verificar cooldown
-                if (!player.hasPermission("virthaloot.use")) {
-                    player.sendMessage("§cNo tienes permiso para usar contenedores de loot.");
-                    event.setCancelled(true);
-                    return;
-                }
-                
-                // Verificar si el contenedor tiene items configurados
-                List<Map<?, ?>> itemsList = lootChestsConfig.getMapList("chests." + chestName + ".items");
-                if (itemsList == null || itemsList.isEmpty()) {
-                    player.sendMessage("§cEste contenedor no tiene recompensas disponibles.");
-                    event.setCancelled(true);
-                    return;
-                }
-                
-                // Verificar cooldown
-                Map<UUID, Long> playerCooldowns = chestCooldowns.computeIfAbsent(chestName, k -> new ConcurrentHashMap<>());
-                long currentTime = System.currentTimeMillis();
-                long cooldownTime = playerCooldowns.getOrDefault(player.getUniqueId(), 0L);
-                
-                if (cooldownTime > currentTime) {
-                    // El jugador está en cooldown
-                    long timeLeft = (cooldownTime - currentTime) / 1000; // Convertir a segundos
-                    String message = "§cDebes esperar §e" + timeLeft + " segundos §cpara volver a usar este contenedor.";
-                    
-                    // Aplicar placeholders si PlaceholderAPI está disponible
-                    if (Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null) {
-                        message = PlaceholderAPI.setPlaceholders(player, message);
-                    }
-                    
-                    player.sendMessage(message);
-                    event.setCancelled(true);
-                    return;
-                }
-                
-                // Establecer nuevo cooldown
-                int cooldownSeconds = lootChestsConfig.getInt("chests." + chestName + ".cooldown");
-                playerCooldowns.put(player.getUniqueId(), currentTime + (cooldownSeconds * 1000L));
-                
-                // Generar y entregar loot personalizado al jugador
-                List<ItemStack> lootItems = lootManager.generateLoot(player, chestName);
-                lootManager.giveLoot(player, lootItems);
-                
-                // Ejecutar comando personalizado si está configurado (compatibilidad con versiones anteriores)
-                String command = lootChestsConfig.getString("chests." + chestName + ".command");
-                if (command != null && !command.isEmpty()) {
-                    // Reemplazar placeholder del nombre del jugador
-                    command = command.replace("%player_name%", player.getName());
-                    
-                    // Ejecutar el comando como consola
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-                }
-                
-                // Ejecutar comandos configurados como items con probabilidades
-                List<Map<?, ?>> commandsList = lootChestsConfig.getMapList("chests." + chestName + ".commands");
-                if (commandsList != null && !commandsList.isEmpty()) {
-                    Random random = new Random();
-                    
-                    for (Map<?, ?> commandMap : commandsList) {
-                        String cmdStr = (String) commandMap.get("command");
-                        double chance = commandMap.containsKey("chance") ? ((Number) commandMap.get("chance")).doubleValue() : 100.0;
-                        
-                        // Verificar si el comando debe ejecutarse según su probabilidad
-                        if (random.nextDouble() * 100 <= chance) {
-                            // Reemplazar placeholder del nombre del jugador
-                            cmdStr = cmdStr.replace("%player_name%", player.getName());
-                            
-                            // Ejecutar el comando como consola
-                            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmdStr);
-                        }
-                    }
+        String chestName = indexedChest.getName();
+        
+        // Es un contenedor de loot, verificar cooldown
+        if (!player.hasPermission("virthaloot.use")) {
+            player.sendMessage("§cNo tienes permiso para usar contenedores de loot.");
+            interactionCache.record(player, clickedBlock, current, chestName, 0L, currentTime);
+            event.setCancelled(true);
+            return;
+        }
+        
+        // Verificar si el contenedor tiene items configurados
+        LootTable lootTable = current.getLootTables().get(chestName);
+        if (lootTable == null || lootTable.isEmpty()) {
+            player.sendMessage("§cEste contenedor no tiene recompensas disponibles.");
+            interactionCache.record(player, clickedBlock, current, chestName, 0L, currentTime);
+            event.setCancelled(true);
+            return;
+        }
+        
+        // Verificar cooldown y establecer el nuevo de forma atómica
+        long newCooldown = currentTime + lootTable.getCooldownMillis();
+        UUID cooldownKey = getCooldownKey(lootTable, player);
+        long cooldownTime = cooldownStore.tryClaim(chestName, cooldownKey, currentTime, newCooldown);
+        
+        if (cooldownTime != 0) {
+            // El jugador está en cooldown; el mensaje se limita a uno por intervalo
+            InteractionCache.LastInteraction last = interactionCache.record(player, clickedBlock, current, chestName, cooldownTime, currentTime);
+            interactionCache.sendCooldownMessage(player, last, currentTime);
+            event.setCancelled(true);
+            return;
+        }
+        interactionCache.record(player, clickedBlock, current, chestName, newCooldown, currentTime);
+        
+        // Entregar el loot ahora o en un tick posterior si el servidor va cargado
+        admissionController.submit(player, target -> openLootChest(target, chestName, lootTable, current.getSettings()),
+                () -> cooldownStore.release(chestName, cooldownKey, newCooldown));
+        
+        // Cancelar el evento para que no se abra el contenedor normal (si es un cofre)
+        event.setCancelled(true);
+    }
+    
+    /**
+     * Genera y entrega el loot de un cofre cuyo cooldown ya se ha reclamado y ejecuta sus comandos
+     * @param player Jugador que abrió el cofre
+     * @param chestName Nombre del contenedor
+     * @param lootTable Tabla de loot compilada del contenedor, de la instantánea en la que se reclamó
+     * @param settings Ajustes de esa misma instantánea
+     */
+    private void openLootChest(Player player, String chestName, LootTable lootTable, Settings settings) {
+        // Una apertura aplazada usa la tabla capturada al hacer clic aunque se haya recargado la configuración
+        RandomGenerator random = randomService.current();
+        List<ItemStack> lootItems = lootTable.roll(random);
+        lootManager.giveLoot(player, chestName, lootItems, settings);
+        
+        // Ejecutar los comandos de recompensa (command y commands), compilados al cargar la configuración
+        List<LootTable.RewardCommand> rewardCommands = lootTable.getCommands();
+        if (!rewardCommands.isEmpty()) {
+            for (LootTable.RewardCommand rewardCommand : rewardCommands) {
+                // Verificar si el comando debe ejecutarse según su probabilidad
+                if (random.nextDouble() * 100 <= rewardCommand.getChance()) {
+                    String command = rewardCommand.getTemplate().render(player, chestName, 0, lootItems.size());
+                    rewardDispatcher.dispatch(player, command, rewardCommand.isImmediate());
                 }
-                
-                // Cancelar el evento para que no se abra el contenedor normal (si es un cofre)
-                event.setCancelled(true);
-                return;
             }
         }
     }
     
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        interactionCache.remove(event.getPlayer().getUniqueId());
+        if (placeholderExpansion != null) {
+            placeholderExpansion.forget(event.getPlayer().getUniqueId());
+        }
+    }
+    
     @EventHandler
     public void onBlockBreak(BlockBreakEvent event) {
         Block block = event.getBlock();
         
-        Player player = event.getPlayer();
-        Location loc = block.getLocation();
-        String locString = loc.getWorld().getName() + "," + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ();
-        
         // Verificar si es un contenedor de loot
-        ConfigurationSection chestsSection = lootChestsConfig.getConfigurationSection("chests");
-        if (chestsSection == null) {
+        ChestLocationIndex.IndexedChest indexedChest = getChestIndex().get(block);
+        if (indexedChest == null) {
             return;
         }
         
-        for (String chestName : chestsSection.getKeys(false)) {
-            String chestLoc = lootChestsConfig.getString("chests." + chestName + ".location");
-            if (chestLoc != null && chestLoc.equals(locString)) {
-                // Verificar si el tipo de bloque coincide (para compatibilidad con versiones anteriores)
-                String configBlockType = lootChestsConfig.getString("chests." + chestName + ".blockType");
-                if (configBlockType != null && !configBlockType.equals(block.getType().toString())) {
-                    // El bloque ha sido reemplazado por otro tipo
-                    continue;
-                }
-                
-                // Es un contenedor de loot
-                if (!player.hasPermission("virthaloot.admin")) {
-                    player.sendMessage("§cNo tienes permiso para destruir contenedores de loot.");
-                    event.setCancelled(true);
-                    return;
-                }
-                
-                player.sendMessage("§aHas destruido el contenedor de loot '" + chestName + "'. Usa §e/vloot delete " + chestName + " §apara eliminarlo completamente.");
-                return;
-            }
+        Player player = event.getPlayer();
+        String chestName = indexedChest.getName();
+        
+        // Es un contenedor de loot
+        if (!player.hasPermission("virthaloot.admin")) {
+            player.sendMessage("§cNo tienes permiso para destruir contenedores de loot.");
+            event.setCancelled(true);
+            return;
         }
+        
+        player.sendMessage("§aHas destruido el contenedor de loot '" + chestName + "'. Usa §e/vloot delete " + chestName + " §apara eliminarlo completamente.");
     }
 }
\ No newline at end of file
@@ -20,7 +20,7 @@ public class VirthaLootTabCompleter implements TabCompleter {
     private final VirthaLootPlugin plugin;
     @SuppressWarnings("unused")
     private final List<String> subCommands = Arrays.asList(
-            "create", "edit", "info", "list", "delete", "chance", "cooldown"
+            "create", "edit", "info", "list", "delete", "chance", "cooldown", "stats", "export", "reload"
     );
 
     /**
@@ -60,6 +60,9 @@ public class VirthaLootTabCompleter implements TabCompleter {
             
             if (player.hasPermission("virthaloot.admin")) {
                 availableCommands.add("delete");
+                availableCommands.add("stats");
+                availableCommands.add("export");
+                availableCommands.add("reload");
             }
             
             // Comandos disponibles para todos